@@ -7,6 +7,7 @@ public class PageResult<T> {
     private Long total;
     private Integer totalPage;
     private List<T> items;
+    private String nextCursor;// 游标分页时下一页的游标，没有下一页时为null
 
     public PageResult() {
     }
@@ -45,4 +46,12 @@ public class PageResult<T> {
     public void setItems(List<T> items) {
         this.items = items;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -3,12 +3,19 @@ package com.leyou.goods.controller;
 import com.leyou.goods.service.GoodsHtmlService;
 import com.leyou.goods.service.GoodsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.servlet.ModelAndView;
 
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
 
 @Controller
 public class GoodsController {
@@ -17,25 +24,49 @@ public class GoodsController {
     @Autowired
     private GoodsHtmlService goodsHtmlService;
 
-    @GetMapping("item/{id}.html")
-    public String toItemPage(@PathVariable("id")Long id, Model model){
-
-        Map<String, Object> map = this.goodsService.loadData(id);
+    /**
+     * 同时在请求线程中加载页面数据的请求数上限，超过时返回503，避免冷启动时大量请求同时访问item-service
+     */
+    @Value("${leyou.goods.html.inline-renders:4}")
+    private int inlineRenders;
 
-        model.addAllAttributes(map);
+    private Semaphore inlineSlots;
 
-        this.goodsHtmlService.createHtml(id);
+    @PostConstruct
+    public void init() {
+        this.inlineSlots = new Semaphore(this.inlineRenders);
+    }
 
-        return "item";
+    /**
+     * 已经生成静态页时直接返回文件内容，否则先提交后台生成任务，
+     * 有空闲名额时本次渲染页面，没有时返回503，客户端按Retry-After重试时静态页通常已经生成
+     * @param id
+     * @param response
+     * @return 直接返回文件或者503时为null
+     * @throws IOException
+     */
+    @GetMapping("item/{id}.html")
+    public ModelAndView toItemPage(@PathVariable("id")Long id, HttpServletResponse response) throws IOException {
+
+        byte[] html = this.goodsHtmlService.getHtml(id);
+        if (html != null) {
+            response.setContentType(MediaType.TEXT_HTML_VALUE + ";charset=UTF-8");
+            response.setContentLength(html.length);
+            response.getOutputStream().write(html);
+            return null;
+        }
+
+        this.goodsHtmlService.tryCreate(id);
+
+        if (!this.inlineSlots.tryAcquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return null;
+        }
+        try {
+            return new ModelAndView("item", this.goodsService.loadData(id));
+        } finally {
+            this.inlineSlots.release();
+        }
     }
 }
-
-
-
-
-
-
-
-
-
-
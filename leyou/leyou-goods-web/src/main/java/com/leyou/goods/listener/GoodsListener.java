@@ -12,30 +12,37 @@ import org.springframework.stereotype.Component;
 @Component
 public class GoodsListener {
 
+    /**
+     * 生成失败的任务也重新发送到这两个队列
+     */
+    public static final String SAVE_QUEUE = "leyou.item.save.queue";
+
+    public static final String DELETE_QUEUE = "leyou.item.delete.queue";
+
     @Autowired
     private GoodsHtmlService goodsHtmlService;
     
     @RabbitListener(bindings = @QueueBinding(
-            value = @Queue(value = "leyou.item.save.queue",durable = "true"),
+            value = @Queue(value = SAVE_QUEUE,durable = "true"),
             exchange = @Exchange(value = "leyou.item.exchange",ignoreDeclarationExceptions = "true",type = ExchangeTypes.TOPIC),
             key = {"item.insert","item.update"}
     ))
-    public void save(Long id){
+    public void save(Long id) throws InterruptedException {
         if(id == null){
             return;
         }
-        this.goodsHtmlService.createHtml(id);
+        this.goodsHtmlService.submitCreate(id);
     }
 
     @RabbitListener(bindings = @QueueBinding(
-            value = @Queue(value = "leyou.item.delete.queue",durable = "true"),
+            value = @Queue(value = DELETE_QUEUE,durable = "true"),
             exchange = @Exchange(value = "leyou.item.exchange",ignoreDeclarationExceptions = "true",type = ExchangeTypes.TOPIC),
             key = {"item.delete"}
     ))
-    public void delete(Long id){
+    public void delete(Long id) throws InterruptedException {
         if(id == null){
             return;
         }
-        this.goodsHtmlService.deleteHtml(id);
+        this.goodsHtmlService.submitDelete(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.leyou.goods.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 把静态页保存在本地目录中，由nginx直接读取。
+ * 按spuId的最后两位分成100个子目录，页面路径为{root}/{spuId%100}/{spuId}.html，
+ * nginx需要把/item/{id}.html改写到对应的子目录。
+ * 先写入同一文件系统中的临时文件，刷盘后原子替换，nginx不会读到写了一半的页面。
+ * 同时生成压缩好的{spuId}.html.gz，nginx打开gzip_static后直接返回，不再逐个请求压缩。
+ * 没有纯java的brotli编码器，只生成gzip。
+ * 数据模型指纹以固定长度的注释追加在页面末尾，和页面一起原子替换，读取时只读最后几十个字节
+ */
+@Component
+public class FilePageStore implements PageStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilePageStore.class);
+
+    private static final String TMP_DIR = ".tmp";
+
+    private static final String FINGERPRINT_PREFIX = "\n<!-- leyou-model:";
+
+    private static final String FINGERPRINT_SUFFIX = " -->\n";
+
+    /**
+     * 指纹为16位十六进制数，注释的长度固定
+     */
+    private static final int FINGERPRINT_LENGTH = FINGERPRINT_PREFIX.length() + 16 + FINGERPRINT_SUFFIX.length();
+
+    private static final byte[] NO_TRAILER = new byte[0];
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${leyou.goods.html.root:html/item}")
+    private String root;
+
+    @Value("${leyou.goods.html.gzip:true}")
+    private boolean gzip;
+
+    /**
+     * 页面只在修改时压缩一次，使用最高压缩级别换取更小的文件
+     */
+    @Value("${leyou.goods.html.gzip-level:9}")
+    private int gzipLevel;
+
+    private Counter htmlBytes;
+
+    private Counter gzipBytes;
+
+    private DistributionSummary gzipRatio;
+
+    private Path rootDir;
+
+    private Path tmpDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        this.rootDir = Paths.get(this.root).toAbsolutePath();
+        this.tmpDir = this.rootDir.resolve(TMP_DIR);
+        this.htmlBytes = Counter.builder("leyou.goods.page.bytes").tag("encoding", "identity")
+                .baseUnit("bytes").register(this.meterRegistry);
+        this.gzipBytes = Counter.builder("leyou.goods.page.bytes").tag("encoding", "gzip")
+                .baseUnit("bytes").register(this.meterRegistry);
+        this.gzipRatio = DistributionSummary.builder("leyou.goods.page.compression.ratio").tag("encoding", "gzip")
+                .description("compressed size divided by html size")
+                .register(this.meterRegistry);
+        Files.createDirectories(this.tmpDir);
+        //清理上次进程崩溃时留下的临时文件
+        try (Stream<Path> stale = Files.list(this.tmpDir)) {
+            stale.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOGGER.warn("cannot delete stale temp page {}", file, e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void save(Long spuId, byte[] content, int length, long fingerprint) throws IOException {
+        String trailer = FINGERPRINT_PREFIX + String.format("%016x", fingerprint) + FINGERPRINT_SUFFIX;
+        this.save(spuId, content, length, trailer.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void save(Long spuId, byte[] content, int length, byte[] trailer) throws IOException {
+        Path file = this.pageFile(spuId);
+        Files.createDirectories(file.getParent());
+        //先替换压缩文件，nginx优先返回.gz，不会出现压缩文件比页面旧的情况
+        if (this.gzip) {
+            byte[] compressed = this.compress(content, length, trailer);
+            this.write(spuId, gzipFile(file), compressed, compressed.length, NO_TRAILER);
+            this.gzipBytes.increment(compressed.length);
+            this.gzipRatio.record(length == 0 ? 1 : (double) compressed.length / (length + trailer.length));
+        } else {
+            //关闭gzip之前生成的.gz会被gzip_static优先返回，必须在写入新页面之前删除
+            Files.deleteIfExists(gzipFile(file));
+        }
+        this.write(spuId, file, content, length, trailer);
+        this.htmlBytes.increment(length + trailer.length);
+    }
+
+    @Override
+    public Long fingerprint(Long spuId) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.pageFile(spuId), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FINGERPRINT_LENGTH) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_LENGTH);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, size - FINGERPRINT_LENGTH + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+            String trailer = new String(buffer.array(), StandardCharsets.US_ASCII);
+            if (!trailer.startsWith(FINGERPRINT_PREFIX) || !trailer.endsWith(FINGERPRINT_SUFFIX)) {
+                //之前版本生成的页面没有指纹
+                return null;
+            }
+            return Long.parseUnsignedLong(trailer.substring(FINGERPRINT_PREFIX.length(), FINGERPRINT_PREFIX.length() + 16), 16);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] read(Long spuId) throws IOException {
+        try {
+            return Files.readAllBytes(this.pageFile(spuId));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(Long spuId) throws IOException {
+        Path file = this.pageFile(spuId);
+        //先删除压缩文件，避免页面删除后nginx仍然返回.gz
+        Files.deleteIfExists(gzipFile(file));
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * 写入临时文件并刷盘，再原子替换目标文件
+     */
+    private void write(Long spuId, Path file, byte[] content, int length, byte[] trailer) throws IOException {
+        //不用createTempFile，它创建的文件只有属主可读，nginx无法读取
+        Path tmp = this.tmpDir.resolve(spuId + "-" + Thread.currentThread().getId() + "-" + System.nanoTime() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {ByteBuffer.wrap(content, 0, length), ByteBuffer.wrap(trailer)};
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+                channel.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private byte[] compress(byte[] content, int length, byte[] trailer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(512, length / 4));
+        try (OutputStream gz = new LevelGZIPOutputStream(out, this.gzipLevel)) {
+            gz.write(content, 0, length);
+            gz.write(trailer);
+        }
+        return out.toByteArray();
+    }
+
+    private static Path gzipFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    private Path pageFile(Long spuId) {
+        return this.rootDir.resolve(String.format("%02d", Math.floorMod(spuId, 100L))).resolve(spuId + ".html");
+    }
+
+    /**
+     * GZIPOutputStream不能直接指定压缩级别
+     */
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            this.def.setLevel(level);
+        }
+    }
+}
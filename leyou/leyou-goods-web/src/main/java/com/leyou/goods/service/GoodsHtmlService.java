@@ -1,65 +1,412 @@
 package com.leyou.goods.service;
 
+import com.leyou.goods.listener.GoodsListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 生成商品详情静态页。生成任务在独立的有界线程池中执行，
+ * 同一个spuId排队中的多次生成、删除请求合并成一次，以最后一次请求为准。
+ * 每个页面和生成它的数据模型指纹一起保存在pageStore中，没有变化时跳过渲染和写入，重启后仍然有效。
+ * 生成失败的任务按指数退避重试，重试次数用完或者进程关闭时还没有完成的任务重新发送到消息队列，
+ * 消息确认以后也不会丢失
+ */
 @Service
 public class GoodsHtmlService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GoodsHtmlService.class);
+
+    /**
+     * 同一个spuId的任务串行执行，按spuId取模分段加锁
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private static final int MAX_POOLED_BUFFER = 1024 * 1024;
+
+    private static final String TEMPLATE = "item";
+
+    /**
+     * 生成线程数量固定，每个线程复用一个渲染缓冲区
+     */
+    private static final ThreadLocal<PageBuffer> BUFFERS = ThreadLocal.withInitial(PageBuffer::new);
+
     @Autowired
     private TemplateEngine templateEngine;
     @Autowired
     private GoodsService goodsService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private PageStore pageStore;
+    @Autowired
+    private AmqpTemplate amqpTemplate;
 
-    public void createHtml(Long spuId){
+    @Value("${leyou.goods.html.threads:4}")
+    private int threads;
 
-        //初始化运行上下文
-        Context context = new Context();
-        //设置数据模型
-        context.setVariables(this.goodsService.loadData(spuId));
+    /**
+     * 最多排队等待执行的spuId数量
+     */
+    @Value("${leyou.goods.html.queue-capacity:1000}")
+    private int queueCapacity;
 
-        PrintWriter printWriter =null;
-        try {
-            //把静态文件生成到服务器本地
-            File file = new File("D:\\Tool\\nginx-1.16.1\\nginx-1.16.1\\html\\item\\" + spuId + ".html");
-            printWriter = new PrintWriter(file);
-
-            this.templateEngine.process("item",context,printWriter);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }finally {
-            if(printWriter != null){
-                printWriter.close();
-            }
+    /**
+     * 生成失败后在本地重试的次数，用完后重新发送到消息队列
+     */
+    @Value("${leyou.goods.html.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    /**
+     * 第一次重试的等待时间，之后每次翻倍
+     */
+    @Value("${leyou.goods.html.retry.initial-backoff-millis:1000}")
+    private long initialBackoffMillis;
+
+    /**
+     * 关闭时等待排队中的任务执行完成的时间
+     */
+    @Value("${leyou.goods.html.shutdown-timeout-seconds:30}")
+    private long shutdownTimeoutSeconds;
+
+    /**
+     * 排队中的spuId及其最后一次请求的操作，true为生成，false为删除
+     */
+    private final ConcurrentMap<Long, Boolean> pending = new ConcurrentHashMap<>();
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * 等待重试的spuId及其操作
+     */
+    private final ConcurrentMap<Long, Boolean> retrying = new ConcurrentHashMap<>();
+
+    /**
+     * spuId连续失败的次数
+     */
+    private final ConcurrentMap<Long, Integer> failures = new ConcurrentHashMap<>();
+
+    private Semaphore slots;
+
+    private ExecutorService executor;
+
+    private ScheduledExecutorService retryScheduler;
+
+    private Timer renderTimer;
+
+    private Counter coalesced;
+
+    private Counter dropped;
+
+    private Counter rendered;
+
+    private Counter skipped;
+
+    private Counter retried;
+
+    private Counter republished;
+
+    private byte[] templateDigest;
+
+    public GoodsHtmlService() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
         }
     }
 
-    public void deleteHtml(Long id) {
-        File file = new File("D:\\Tool\\nginx-1.16.1\\nginx-1.16.1\\html\\item\\" + id + ".html");
-        file.deleteOnExit();
+    @PostConstruct
+    public void init() throws IOException {
+        this.templateDigest = ModelFingerprint.digest(
+                new ClassPathResource("templates/" + TEMPLATE + ".html").getInputStream());
+        this.slots = new Semaphore(this.queueCapacity);
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "goods-html-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "goods-html-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("leyou.goods.page.queue", this.pending, ConcurrentMap::size)
+                .description("spuIds waiting for page generation")
+                .register(this.meterRegistry);
+        this.renderTimer = Timer.builder("leyou.goods.page.render")
+                .description("time to load data and write one item page")
+                .register(this.meterRegistry);
+        this.coalesced = this.meterRegistry.counter("leyou.goods.page.coalesced");
+        this.dropped = this.meterRegistry.counter("leyou.goods.page.dropped");
+        this.rendered = this.meterRegistry.counter("leyou.goods.page.generate", "result", "rendered");
+        this.skipped = this.meterRegistry.counter("leyou.goods.page.generate", "result", "skipped");
+        this.retried = this.meterRegistry.counter("leyou.goods.page.retried");
+        this.republished = this.meterRegistry.counter("leyou.goods.page.republished");
+        Gauge.builder("leyou.goods.page.skip.ratio", this, service -> {
+                    double total = service.rendered.count() + service.skipped.count();
+                    return total == 0 ? 0 : service.skipped.count() / total;
+                })
+                .description("share of page generations skipped because the model was unchanged")
+                .register(this.meterRegistry);
     }
-}
-
 
+    /**
+     * 监听容器已经停止，不会再有新的任务。等待排队中的任务执行完成，
+     * 超时还没有执行的任务和等待重试的任务重新发送到消息队列
+     * @throws InterruptedException
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        this.retryScheduler.shutdownNow();
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(this.shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                LOGGER.warn("item page generation did not finish in {} s, republishing {} pending spuIds",
+                        this.shutdownTimeoutSeconds, this.pending.size());
+                this.executor.shutdownNow();
+            }
+        } finally {
+            this.republishAll(this.retrying);
+            this.republishAll(this.pending);
+        }
+    }
 
+    /**
+     * 提交生成任务，队列已满时阻塞等待，用于消息监听，让消费速度跟上生成速度
+     * @param spuId
+     * @throws InterruptedException
+     */
+    public void submitCreate(Long spuId) throws InterruptedException {
+        this.retrying.remove(spuId);
+        this.submit(spuId, true, true);
+    }
 
+    /**
+     * 提交删除任务，队列已满时阻塞等待
+     * @param spuId
+     * @throws InterruptedException
+     */
+    public void submitDelete(Long spuId) throws InterruptedException {
+        this.retrying.remove(spuId);
+        this.submit(spuId, false, true);
+    }
 
+    /**
+     * 尝试提交生成任务，队列已满时直接放弃，用于页面请求，不阻塞请求线程
+     * @param spuId
+     */
+    public void tryCreate(Long spuId) {
+        try {
+            this.submit(spuId, true, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    /**
+     * 读取已经生成的静态页
+     * @param spuId
+     * @return 还没有生成时返回null
+     * @throws IOException
+     */
+    public byte[] getHtml(Long spuId) throws IOException {
+        return this.pageStore.read(spuId);
+    }
 
+    /**
+     * 生成静态页：数据模型的指纹和上次相同时直接返回，
+     * 否则渲染到当前线程复用的缓冲区中，再整体交给pageStore保存
+     * @param spuId
+     * @return 是否重新生成了页面
+     * @throws IOException
+     */
+    public boolean createHtml(Long spuId) throws IOException {
 
+        Map<String, Object> model = this.goodsService.loadData(spuId);
+        long fingerprint = ModelFingerprint.of(model, this.templateDigest);
+        Long previous = this.pageStore.fingerprint(spuId);
+        if (previous != null && previous == fingerprint) {
+            this.skipped.increment();
+            return false;
+        }
 
+        //初始化运行上下文
+        Context context = new Context();
+        //设置数据模型
+        context.setVariables(model);
 
+        PageBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        try {
+            Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+            this.templateEngine.process(TEMPLATE, context, writer);
+            writer.flush();
+            this.pageStore.save(spuId, buffer.array(), buffer.size(), fingerprint);
+        } finally {
+            //偶尔出现的超大页面不长期占用内存
+            if (buffer.array().length > MAX_POOLED_BUFFER) {
+                BUFFERS.remove();
+            }
+        }
+        this.rendered.increment();
+        return true;
+    }
 
+    public void deleteHtml(Long id) throws IOException {
+        this.pageStore.delete(id);
+    }
 
+    /**
+     * @return 是否已经排队，队列已满并且不阻塞时返回false
+     */
+    private boolean submit(Long spuId, boolean create, boolean block) throws InterruptedException {
+        //已经在排队，只更新操作，由排队中的任务执行
+        if (this.pending.replace(spuId, create) != null) {
+            this.coalesced.increment();
+            return true;
+        }
+        if (block) {
+            this.slots.acquire();
+        } else if (!this.slots.tryAcquire()) {
+            this.dropped.increment();
+            return false;
+        }
+        if (this.pending.putIfAbsent(spuId, create) != null) {
+            //等待期间其他线程已经提交了同一个spuId
+            this.pending.replace(spuId, create);
+            this.slots.release();
+            this.coalesced.increment();
+            return true;
+        }
+        try {
+            this.executor.execute(() -> this.run(spuId));
+        } catch (RejectedExecutionException e) {
+            this.pending.remove(spuId);
+            this.slots.release();
+            throw e;
+        }
+        return true;
+    }
 
+    private void run(Long spuId) {
+        Boolean create = null;
+        try {
+            synchronized (this.locks[(int) Math.floorMod(spuId, (long) LOCK_STRIPES)]) {
+                //先移出队列再执行，执行期间的新请求会重新排队，读取到最新的数据
+                create = this.pending.remove(spuId);
+                this.slots.release();
+                if (create == null) {
+                    return;
+                }
+                if (create) {
+                    this.renderTimer.recordCallable(() -> this.createHtml(spuId));
+                } else {
+                    this.deleteHtml(spuId);
+                }
+            }
+            this.failures.remove(spuId);
+        } catch (Exception e) {
+            if (create == null) {
+                LOGGER.error("failed to generate item page {}", spuId, e);
+                return;
+            }
+            this.retry(spuId, create, e);
+        }
+    }
 
+    /**
+     * 失败的任务按指数退避重新排队，次数用完后重新发送到消息队列
+     */
+    private void retry(Long spuId, boolean create, Exception cause) {
+        int attempt = this.failures.merge(spuId, 1, Integer::sum);
+        if (attempt >= this.maxAttempts) {
+            LOGGER.error("failed to generate item page {} after {} attempts, republishing", spuId, attempt, cause);
+            this.failures.remove(spuId);
+            this.republish(spuId, create);
+            return;
+        }
+        long backoff = this.initialBackoffMillis << Math.min(attempt - 1, 20);
+        LOGGER.warn("failed to generate item page {}, retry {} in {} ms", spuId, attempt, backoff, cause);
+        this.retrying.put(spuId, create);
+        try {
+            this.retryScheduler.schedule(() -> this.resubmit(spuId), backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //正在关闭，由shutdown重新发送
+        }
+    }
 
+    private void resubmit(Long spuId) {
+        //重试之前已经有新的请求时，新请求覆盖了这次重试
+        Boolean create = this.retrying.remove(spuId);
+        if (create == null) {
+            return;
+        }
+        this.retried.increment();
+        try {
+            if (!this.submit(spuId, create, false)) {
+                this.republish(spuId, create);
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            this.republish(spuId, create);
+        }
+    }
 
+    private void republishAll(ConcurrentMap<Long, Boolean> tasks) {
+        tasks.keySet().forEach(spuId -> {
+            Boolean create = tasks.remove(spuId);
+            if (create != null) {
+                this.republish(spuId, create);
+            }
+        });
+    }
 
+    /**
+     * 把任务重新发送到监听的队列，由消息队列保证不丢失
+     */
+    private void republish(Long spuId, boolean create) {
+        try {
+            this.amqpTemplate.convertAndSend(create ? GoodsListener.SAVE_QUEUE : GoodsListener.DELETE_QUEUE, spuId);
+            this.republished.increment();
+        } catch (AmqpException e) {
+            LOGGER.error("failed to republish item page {} ({}), the page is stale until the next change",
+                    spuId, create ? "create" : "delete", e);
+        }
+    }
 
+    /**
+     * 可以直接取出内部数组的缓冲区，保存时不再复制一次
+     */
+    private static class PageBuffer extends ByteArrayOutputStream {
+        PageBuffer() {
+            super(INITIAL_BUFFER);
+        }
 
+        byte[] array() {
+            return this.buf;
+        }
+    }
+}
@@ -6,9 +6,15 @@ import com.leyou.goods.client.GoodsClient;
 import com.leyou.goods.client.SpecificationClient;
 import com.leyou.item.pojo.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @Service
 public class GoodsService {
@@ -22,38 +28,102 @@ public class GoodsService {
     @Autowired
     private SpecificationClient specificationClient;
 
-    public Map<String,Object> loadData(Long spuId){
-        Map<String,Object> model=new HashMap<>();
+    /**
+     * 并行调用item-service的线程数
+     */
+    @Value("${leyou.goods.load.threads:16}")
+    private int threads;
+
+    /**
+     * 每次远程调用的超时时间
+     */
+    @Value("${leyou.goods.load.timeout-millis:3000}")
+    private long timeoutMillis;
+
+    private ExecutorService executor;
+
+    /**
+     * 只用来触发超时，不执行远程调用
+     */
+    private ScheduledExecutorService timer;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(1000), r -> {
+            Thread thread = new Thread(r, "goods-load-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "goods-load-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
+    @PreDestroy
+    public void shutdown() {
+        this.executor.shutdownNow();
+        this.timer.shutdownNow();
+    }
+
+    /**
+     * 加载详情页的数据模型。spu、spuDetail和skus并行查询，
+     * 依赖spu中分类和品牌的四个查询在spu返回后并行发出，耗时约为两次调用
+     * @param spuId
+     * @return
+     */
+    public Map<String,Object> loadData(Long spuId){
         //根据spuId查询spu
-        Spu spu = this.goodsClient.querySpuById(spuId);
+        CompletableFuture<Spu> spuFuture = this.call(() -> this.goodsClient.querySpuById(spuId));
         //查询spuSetail
-        SpuDetail spuDetail = this.goodsClient.querySpuDateilBySpuId(spuId);
-        //查询分类：Map<String,Object>
-        List<Long> cids = Arrays.asList(spu.getCid1(), spu.getCid2(), spu.getCid3());
-        List<String> names = this.categoryClient.queryNamesByIds(cids);
-        //初始化一个分类的map
+        CompletableFuture<SpuDetail> spuDetailFuture = this.call(() -> this.goodsClient.querySpuDateilBySpuId(spuId));
+        //skus
+        CompletableFuture<List<Sku>> skusFuture = this.call(() -> this.goodsClient.querySkusBySpuId(spuId));
+        //查询分类名称
+        CompletableFuture<Map<Long,String>> namesFuture = spuFuture.thenCompose(spu ->
+                this.call(() -> this.categoryClient.queryNameMapByIds(this.cids(spu))));
+        //查询品牌
+        CompletableFuture<Brand> brandFuture = spuFuture.thenCompose(spu ->
+                this.call(() -> this.brandClient.queryBrandById(spu.getBrandId())));
+        //查询规格参数组
+        CompletableFuture<List<SpecGroup>> groupsFuture = spuFuture.thenCompose(spu ->
+                this.call(() -> this.specificationClient.queryGroupsWithParam(spu.getCid3())));
+        //查询特殊的规格参数
+        CompletableFuture<List<SpecParam>> paramsFuture = spuFuture.thenCompose(spu ->
+                this.call(() -> this.specificationClient.queryParams(null, spu.getCid3(), false, null)));
+
+        Spu spu = this.join(spuFuture);
+        SpuDetail spuDetail = this.join(spuDetailFuture);
+        List<Sku> skus = this.join(skusFuture);
+        Map<Long,String> names = this.join(namesFuture);
+        Brand brand = this.join(brandFuture);
+        List<SpecGroup> groups = this.join(groupsFuture);
+        List<SpecParam> params = this.join(paramsFuture);
+
+        //初始化一个分类的map，按id取名称，不依赖返回的顺序
         List<Map<String,Object>> categories=new ArrayList<>();
-        for (int i=0;i<cids.size();i++){
+        for (Long cid : this.cids(spu)) {
             Map<String,Object> map=new HashMap<>();
-            map.put("id",cids.get(i));
-            map.put("name",names.get(i));
+            map.put("id",cid);
+            map.put("name",names.get(cid));
             categories.add(map);
         }
-        //查询品牌
-        Brand brand = this.brandClient.queryBrandById(spu.getBrandId());
-        //skus
-        List<Sku> skus = this.goodsClient.querySkusBySpuId(spuId);
-        //查询规格参数组
-        List<SpecGroup> groups = this.specificationClient.queryGroupsWithParam(spu.getCid3());
-        //查询特殊的规格参数
-        List<SpecParam> params = this.specificationClient.queryParams(null, spu.getCid3(), false, null);
+        //页面不展示库存和时间，清除后页面内容只随展示的字段变化，只改库存时静态页不需要重新生成
+        skus.forEach(sku -> {
+            sku.setStock(null);
+            sku.setCreateTime(null);
+            sku.setLastUpdateTime(null);
+        });
         //初始化特殊规格参数的map
         Map<Long,Object> paraMap=new HashMap<>();
         params.forEach(param->{
             paraMap.put(param.getId(),param.getName());
         });
 
+        Map<String,Object> model=new HashMap<>();
         model.put("spu",spu);
         model.put("spuDetail",spuDetail);
         model.put("categories",categories);
@@ -65,18 +135,35 @@ public class GoodsService {
         return model;
     }
 
-}
-
-
-
-
-
-
-
-
-
-
-
+    private List<Long> cids(Spu spu) {
+        return Arrays.asList(spu.getCid1(), spu.getCid2(), spu.getCid3());
+    }
 
+    /**
+     * 在线程池中执行一次远程调用，超时后返回的future以TimeoutException结束
+     */
+    private <T> CompletableFuture<T> call(Supplier<T> supplier) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(supplier, this.executor);
+        ScheduledFuture<?> timeout = this.timer.schedule(
+                () -> future.completeExceptionally(new TimeoutException("item-service call timed out after " + this.timeoutMillis + " ms")),
+                this.timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, e) -> timeout.cancel(false));
+        return future;
+    }
 
+    /**
+     * 等待调用结束，远程调用抛出的异常原样抛出
+     */
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        }
+    }
 
+}
@@ -0,0 +1,111 @@
+package com.leyou.goods.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.leyou.item.pojo.Brand;
+import com.leyou.item.pojo.Spu;
+import com.leyou.item.pojo.SpuDetail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 详情页数据模型的64位指纹，只包含模板中实际展示的字段，
+ * 例如spu只取标题和副标题，修改时间等字段变化不会改变指纹。
+ * 模板内容的摘要也参与计算，指纹和页面一起持久保存，修改模板后所有页面都会重新生成
+ */
+final class ModelFingerprint {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private ModelFingerprint() {
+    }
+
+    /**
+     * 计算模板内容的摘要
+     * @param template
+     * @return
+     * @throws IOException
+     */
+    static byte[] digest(InputStream template) throws IOException {
+        MessageDigest md5 = newMd5();
+        try (InputStream in = new DigestInputStream(template, md5)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                //只计算摘要
+            }
+        }
+        return md5.digest();
+    }
+
+    /**
+     * 计算loadData返回的数据模型的指纹
+     * @param model
+     * @param templateDigest 模板内容的摘要
+     * @return md5的前8个字节
+     * @throws IOException
+     */
+    static long of(Map<String, Object> model, byte[] templateDigest) throws IOException {
+        Spu spu = (Spu) model.get("spu");
+        SpuDetail spuDetail = (SpuDetail) model.get("spuDetail");
+        Brand brand = (Brand) model.get("brand");
+
+        //与item.html中使用的字段保持一致
+        Map<String, Object> shown = new LinkedHashMap<>();
+        shown.put("title", spu.getTitle());
+        shown.put("subTitle", spu.getSubTitle());
+        shown.put("description", spuDetail.getDescription());
+        shown.put("specialSpec", spuDetail.getSpecialSpec());
+        shown.put("genericSpec", spuDetail.getGenericSpec());
+        shown.put("packingList", spuDetail.getPackingList());
+        shown.put("afterService", spuDetail.getAfterService());
+        shown.put("brand", brand == null ? null : brand.getName());
+        shown.put("categories", model.get("categories"));
+        shown.put("skus", model.get("skus"));
+        shown.put("groups", model.get("groups"));
+        shown.put("paramMap", model.get("paramMap"));
+
+        MessageDigest md5 = newMd5();
+        md5.update(templateDigest);
+        try (OutputStream out = new DigestOutputStream(NullOutputStream.INSTANCE, md5)) {
+            MAPPER.writeValue(out, shown);
+        }
+        byte[] digest = md5.digest();
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xff);
+        }
+        return hash;
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 只计算摘要，不保存序列化结果
+     */
+    private static class NullOutputStream extends OutputStream {
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
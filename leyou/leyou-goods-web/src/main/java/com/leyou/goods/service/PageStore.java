@@ -0,0 +1,42 @@
+package com.leyou.goods.service;
+
+import java.io.IOException;
+
+/**
+ * 商品详情静态页的存储
+ */
+public interface PageStore {
+
+    /**
+     * 保存页面，并和页面一起记录生成页面的数据模型指纹，读取方只会看到旧的完整页面或新的完整页面
+     * @param spuId
+     * @param content utf-8编码的html
+     * @param length content中有效的字节数
+     * @param fingerprint
+     * @throws IOException
+     */
+    void save(Long spuId, byte[] content, int length, long fingerprint) throws IOException;
+
+    /**
+     * 读取保存页面时记录的数据模型指纹
+     * @param spuId
+     * @return 页面不存在或者没有记录指纹时返回null
+     * @throws IOException
+     */
+    Long fingerprint(Long spuId) throws IOException;
+
+    /**
+     * 读取页面
+     * @param spuId
+     * @return 页面不存在时返回null
+     * @throws IOException
+     */
+    byte[] read(Long spuId) throws IOException;
+
+    /**
+     * 立即删除页面
+     * @param spuId
+     * @throws IOException
+     */
+    void delete(Long spuId) throws IOException;
+}
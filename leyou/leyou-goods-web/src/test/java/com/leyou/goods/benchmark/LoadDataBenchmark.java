@@ -0,0 +1,58 @@
+package com.leyou.goods.benchmark;
+
+import com.leyou.goods.service.GoodsService;
+import com.leyou.goods.test.ItemServiceStubs;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用固定延迟的桩代替item-service，对比串行和并行加载详情页数据的耗时。
+ * 只有一个线程时七次调用依次执行，相当于原来的串行实现。直接运行main方法，结果中有p50、p99
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadDataBenchmark {
+
+    /**
+     * 每次远程调用的延迟
+     */
+    @Param({"20"})
+    private long callMillis;
+
+    @Param({"1", "8"})
+    private int threads;
+
+    private GoodsService service;
+
+    @Setup
+    public void setup() {
+        this.service = ItemServiceStubs.newGoodsService(this.threads, 5000L, method -> Thread.sleep(this.callMillis));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.service.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Object> loadData() {
+        return this.service.loadData(1L);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LoadDataBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,83 @@
+package com.leyou.goods.test;
+
+import com.leyou.goods.client.BrandClient;
+import com.leyou.goods.client.CategoryClient;
+import com.leyou.goods.client.GoodsClient;
+import com.leyou.goods.client.SpecificationClient;
+import com.leyou.goods.service.GoodsService;
+import com.leyou.item.pojo.Brand;
+import com.leyou.item.pojo.Spu;
+import com.leyou.item.pojo.SpuDetail;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用桩代替item-service的feign客户端，构造不需要启动任何服务的GoodsService
+ */
+public final class ItemServiceStubs {
+
+    /**
+     * 每次远程调用返回数据之前执行，用来模拟延迟或者记录调用顺序
+     */
+    public interface Call {
+        void before(String method) throws Exception;
+    }
+
+    private ItemServiceStubs() {
+    }
+
+    public static GoodsService newGoodsService(int threads, long timeoutMillis, Call call) {
+        GoodsService service = new GoodsService();
+        ReflectionTestUtils.setField(service, "goodsClient", stub(GoodsClient.class, call));
+        ReflectionTestUtils.setField(service, "categoryClient", stub(CategoryClient.class, call));
+        ReflectionTestUtils.setField(service, "brandClient", stub(BrandClient.class, call));
+        ReflectionTestUtils.setField(service, "specificationClient", stub(SpecificationClient.class, call));
+        ReflectionTestUtils.setField(service, "threads", threads);
+        ReflectionTestUtils.setField(service, "timeoutMillis", timeoutMillis);
+        service.init();
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Call call) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + " stub";
+                }
+            }
+            call.before(method.getName());
+            switch (method.getName()) {
+                case "querySpuById":
+                    Spu spu = new Spu();
+                    spu.setId(1L);
+                    spu.setCid1(1L);
+                    spu.setCid2(2L);
+                    spu.setCid3(3L);
+                    spu.setBrandId(1L);
+                    return spu;
+                case "querySpuDateilBySpuId":
+                    return new SpuDetail();
+                case "queryBrandById":
+                    return new Brand();
+                case "queryNameMapByIds":
+                    Map<Long, String> names = new HashMap<>();
+                    names.put(1L, "手机");
+                    names.put(2L, "手机通讯");
+                    names.put(3L, "手机");
+                    return names;
+                default:
+                    return new ArrayList<>();
+            }
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package com.leyou.goods.test;
+
+import com.leyou.goods.service.GoodsService;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * loadData的调用顺序和超时，不需要启动任何服务
+ */
+public class LoadDataTest {
+
+    private static final List<String> DEPENDENT_CALLS =
+            Arrays.asList("queryNameMapByIds", "queryBrandById", "queryGroupsWithParam", "queryParams");
+
+    /**
+     * spuDetail和skus与spu同时查询，依赖spu的四个查询在spu返回之后才发出
+     */
+    @Test
+    public void dependentCallsStartAfterSpu() {
+        CountDownLatch independentStarted = new CountDownLatch(2);
+        AtomicBoolean concurrent = new AtomicBoolean();
+        List<String> events = new CopyOnWriteArrayList<>();
+        GoodsService service = ItemServiceStubs.newGoodsService(8, 5000L, method -> {
+            events.add(method);
+            if ("querySpuById".equals(method)) {
+                //spu返回之前另外两个查询已经开始，说明三者是并行的
+                concurrent.set(independentStarted.await(2, TimeUnit.SECONDS));
+                events.add("spu returned");
+            } else if ("querySpuDateilBySpuId".equals(method) || "querySkusBySpuId".equals(method)) {
+                independentStarted.countDown();
+            }
+        });
+        try {
+            Map<String, Object> model = service.loadData(1L);
+            assertEquals(7, model.size());
+        } finally {
+            service.shutdown();
+        }
+
+        assertTrue("spuDetail and skus should be loaded while spu is loading", concurrent.get());
+        int spuReturned = events.indexOf("spu returned");
+        for (String call : DEPENDENT_CALLS) {
+            assertTrue(call + " should start after spu returned", events.indexOf(call) > spuReturned);
+        }
+        assertEquals(8, events.size());
+    }
+
+    /**
+     * 不返回的远程调用在超时后以TimeoutException结束，不会一直阻塞生成线程
+     */
+    @Test
+    public void hangingCallTimesOut() {
+        CountDownLatch never = new CountDownLatch(1);
+        GoodsService service = ItemServiceStubs.newGoodsService(8, 100L, method -> {
+            if ("querySpuById".equals(method)) {
+                never.await();
+            }
+        });
+        long start = System.nanoTime();
+        try {
+            service.loadData(1L);
+            fail("loadData should time out");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            service.shutdown();
+        }
+    }
+}
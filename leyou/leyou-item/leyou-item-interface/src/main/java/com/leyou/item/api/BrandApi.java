@@ -6,6 +6,9 @@ import com.leyou.item.pojo.Brand;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.List;
 
 
 @RequestMapping("brand")
@@ -13,6 +16,14 @@ public interface BrandApi {
 
     @GetMapping("{id}")
     public Brand queryBrandById(@PathVariable("id")Long id);
+
+    /**
+     * 根据id集合批量查询品牌
+     * @param ids
+     * @return
+     */
+    @GetMapping("ids")
+    public List<Brand> queryBrandsByIds(@RequestParam("ids")List<Long> ids);
 }
 
 
@@ -1,16 +1,49 @@
 package com.leyou.item.api;
 
+import com.leyou.item.pojo.Category;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
+import java.util.Map;
 
 @RequestMapping("category")
 public interface CategoryApi {
 
     @GetMapping
     public List<String> queryNamesByIds(@RequestParam("ids")List<Long> ids);
+
+    /**
+     * 根据id集合批量查询分类
+     * @param ids
+     * @return
+     */
+    @GetMapping("ids")
+    public List<Category> queryCategoriesByIds(@RequestParam("ids")List<Long> ids);
+
+    /**
+     * 根据id集合查询分类名称，结果按传入的顺序，不存在的id不包含在结果中
+     * @param ids
+     * @return
+     */
+    @GetMapping("names")
+    public Map<Long, String> queryNameMapByIds(@RequestParam("ids")List<Long> ids);
+
+    /**
+     * 根据id集合查询从一级分类开始的名称路径，结果按传入的顺序，不存在的id不包含在结果中
+     * @param ids
+     * @return
+     */
+    @GetMapping("paths")
+    public Map<Long, List<String>> queryPathsByIds(@RequestParam("ids")List<Long> ids);
+
+    /**
+     * 分类树的版本，分类有变化时才会改变
+     * @return
+     */
+    @GetMapping("version")
+    public String queryVersion();
 }
 
 
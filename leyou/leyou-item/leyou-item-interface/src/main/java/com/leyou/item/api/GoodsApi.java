@@ -1,6 +1,7 @@
 package com.leyou.item.api;
 
 import com.leyou.common.pojo.PageResult;
+import com.leyou.item.bo.SpuIndexbo;
 import com.leyou.item.bo.Spubo;
 import com.leyou.item.pojo.Sku;
 import com.leyou.item.pojo.Spu;
@@ -30,6 +31,24 @@ public interface GoodsApi {
             @RequestParam(value = "rows",defaultValue = "5")Integer rows
     );
 
+    /**
+     * 按id游标分页查询spu，第一页不传cursor，之后传入上一页返回的nextCursor
+     * @param key
+     * @param saleable
+     * @param cursor
+     * @param rows
+     * @param withTotal 是否返回总数
+     * @return nextCursor为null表示已经是最后一页
+     */
+    @GetMapping("spu/scan")
+    public PageResult<Spubo> querySpuByCursor(
+            @RequestParam(value = "key",required = false)String key,
+            @RequestParam(value = "saleable",required = false)Boolean saleable,
+            @RequestParam(value = "cursor",required = false)String cursor,
+            @RequestParam(value = "rows",defaultValue = "100")Integer rows,
+            @RequestParam(value = "withTotal",defaultValue = "false")Boolean withTotal
+    );
+
     /**
      * 根据spuId查询spuDetail
      * @param spuId
@@ -46,6 +65,34 @@ public interface GoodsApi {
     @GetMapping("sku/list")
     public List<Sku> querySkusBySpuId(@RequestParam("id")Long spuId);
 
+    /**
+     * 根据spuId集合批量查询sku集合
+     * @param spuIds
+     * @return
+     */
+    @GetMapping("sku/list/ids")
+    public List<Sku> querySkusBySpuIds(@RequestParam("ids")List<Long> spuIds);
+
     @GetMapping("{id}")
     public Spu querySpuById(@PathVariable("id")Long id);
+
+    /**
+     * 按id顺序查询lastId之后的一批spuId，返回空集合表示已经到末尾
+     * @param lastId
+     * @param rows
+     * @return
+     */
+    @GetMapping("spu/ids")
+    public List<Long> querySpuIdsAfter(
+            @RequestParam(value = "lastId",defaultValue = "0")Long lastId,
+            @RequestParam(value = "rows",defaultValue = "100")Integer rows
+    );
+
+    /**
+     * 根据spuId集合批量查询构建索引所需的数据
+     * @param ids
+     * @return
+     */
+    @GetMapping("spu/index")
+    public List<SpuIndexbo> querySpuIndexByIds(@RequestParam("ids")List<Long> ids);
 }
@@ -0,0 +1,18 @@
+package com.leyou.item.bo;
+
+import com.leyou.item.pojo.Brand;
+
+import java.util.List;
+
+public class Brandbo extends Brand {
+
+    private List<Long> cids;// 品牌所属的分类id
+
+    public List<Long> getCids() {
+        return cids;
+    }
+
+    public void setCids(List<Long> cids) {
+        this.cids = cids;
+    }
+}
@@ -0,0 +1,40 @@
+package com.leyou.item.bo;
+
+import com.leyou.item.pojo.Brand;
+import com.leyou.item.pojo.SpecParam;
+
+import java.util.List;
+
+/**
+ * 构建搜索索引文档所需的全部数据：spu、spuDetail、带库存的sku、品牌、分类名称以及可搜索的规格参数
+ */
+public class SpuIndexbo extends Spubo {
+
+    private Brand brand;
+    private List<String> categoryNames;// 按cid1、cid2、cid3的顺序
+    private List<SpecParam> params;// cid3下所有可搜索的规格参数
+
+    public Brand getBrand() {
+        return brand;
+    }
+
+    public void setBrand(Brand brand) {
+        this.brand = brand;
+    }
+
+    public List<String> getCategoryNames() {
+        return categoryNames;
+    }
+
+    public void setCategoryNames(List<String> categoryNames) {
+        this.categoryNames = categoryNames;
+    }
+
+    public List<SpecParam> getParams() {
+        return params;
+    }
+
+    public void setParams(List<SpecParam> params) {
+        this.params = params;
+    }
+}
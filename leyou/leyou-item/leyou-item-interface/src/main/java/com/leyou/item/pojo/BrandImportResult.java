@@ -0,0 +1,73 @@
+package com.leyou.item.pojo;
+
+import java.util.List;
+
+/**
+ * 批量导入品牌的结果统计
+ */
+public class BrandImportResult {
+
+    private Integer brands;// 导入成功的品牌数
+    private Integer links;// 写入的分类品牌关联数
+    private Integer batches;// 提交的事务数
+    private Integer failedBatches;// 回滚的事务数
+    private List<String> failedBrands;// 回滚的批次中的品牌名称，只需要重新导入这些品牌
+    private Long millis;// 总耗时
+    private Double brandsPerSecond;// 平均吞吐
+
+    public Integer getBrands() {
+        return brands;
+    }
+
+    public void setBrands(Integer brands) {
+        this.brands = brands;
+    }
+
+    public Integer getLinks() {
+        return links;
+    }
+
+    public void setLinks(Integer links) {
+        this.links = links;
+    }
+
+    public Integer getBatches() {
+        return batches;
+    }
+
+    public void setBatches(Integer batches) {
+        this.batches = batches;
+    }
+
+    public Integer getFailedBatches() {
+        return failedBatches;
+    }
+
+    public void setFailedBatches(Integer failedBatches) {
+        this.failedBatches = failedBatches;
+    }
+
+    public List<String> getFailedBrands() {
+        return failedBrands;
+    }
+
+    public void setFailedBrands(List<String> failedBrands) {
+        this.failedBrands = failedBrands;
+    }
+
+    public Long getMillis() {
+        return millis;
+    }
+
+    public void setMillis(Long millis) {
+        this.millis = millis;
+    }
+
+    public Double getBrandsPerSecond() {
+        return brandsPerSecond;
+    }
+
+    public void setBrandsPerSecond(Double brandsPerSecond) {
+        this.brandsPerSecond = brandsPerSecond;
+    }
+}
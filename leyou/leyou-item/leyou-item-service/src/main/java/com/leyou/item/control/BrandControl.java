@@ -1,7 +1,9 @@
 package com.leyou.item.control;
 
 import com.leyou.common.pojo.PageResult;
+import com.leyou.item.bo.Brandbo;
 import com.leyou.item.pojo.Brand;
+import com.leyou.item.pojo.BrandImportResult;
 import com.leyou.item.service.BrandService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -54,6 +56,19 @@ public class BrandControl {
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
+    /**
+     * 批量导入品牌及其分类关联
+     * @param brands
+     * @return 导入数量和吞吐
+     */
+    @PostMapping("import")
+    public ResponseEntity<BrandImportResult> importBrands(@RequestBody List<Brandbo> brands){
+        if(CollectionUtils.isEmpty(brands)){
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(this.brandService.importBrands(brands));
+    }
+
     @GetMapping("cid/{cid}")
     public ResponseEntity<List<Brand>> queryBrandsByCid(@PathVariable("cid")Long cid){
         List<Brand> brands=this.brandService.queryBrandsByCid(cid);
@@ -71,6 +86,16 @@ public class BrandControl {
         }
         return ResponseEntity.ok(brand);
     }
+
+    /**
+     * 根据id集合批量查询品牌
+     * @param ids
+     * @return
+     */
+    @GetMapping("ids")
+    public ResponseEntity<List<Brand>> queryBrandsByIds(@RequestParam("ids")List<Long> ids){
+        return ResponseEntity.ok(this.brandService.queryBrandsByIds(ids));
+    }
 }
 
 
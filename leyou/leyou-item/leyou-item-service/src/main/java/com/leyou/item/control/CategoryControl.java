@@ -2,6 +2,7 @@ package com.leyou.item.control;
 
 import com.leyou.item.pojo.Category;
 import com.leyou.item.service.CategoryService;
+import com.leyou.item.service.CategoryTree;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +13,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Controller
 @RequestMapping("category")
@@ -34,13 +37,14 @@ public class CategoryControl {
                 //return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
                 return ResponseEntity.badRequest().build();
             }
-            List<Category> categories=this.categoryService.queryCategoriesByPid(pid);
+            CategoryTree tree=this.categoryService.getTree();
+            List<Category> categories=tree.getChildren(pid);
             if(CollectionUtils.isEmpty(categories)){
                 // 404: 资源服务器未找到
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
             }
-            //200: 查询成功
-            return ResponseEntity.ok(categories);
+            //200: 查询成功，分类树没有变化时返回304
+            return ResponseEntity.ok().eTag(tree.getVersion()).body(categories);
         }catch (Exception e){
             e.printStackTrace();
         }
@@ -50,11 +54,54 @@ public class CategoryControl {
 
     @GetMapping
     public ResponseEntity<List<String>> queryNamesByIds(@RequestParam("ids")List<Long> ids){
-        List<String> names = this.categoryService.queryNameByIds(ids);
+        CategoryTree tree=this.categoryService.getTree();
+        List<String> names = tree.getAll(ids).stream().map(Category::getName).collect(Collectors.toList());
         if(CollectionUtils.isEmpty(names)){
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(names);
+        return ResponseEntity.ok().eTag(tree.getVersion()).body(names);
+    }
+
+    /**
+     * 根据id集合批量查询分类
+     * @param ids
+     * @return
+     */
+    @GetMapping("ids")
+    public ResponseEntity<List<Category>> queryCategoriesByIds(@RequestParam("ids")List<Long> ids){
+        CategoryTree tree=this.categoryService.getTree();
+        return ResponseEntity.ok().eTag(tree.getVersion()).body(tree.getAll(ids));
+    }
+
+    /**
+     * 根据id集合查询分类名称，结果按传入的顺序
+     * @param ids
+     * @return
+     */
+    @GetMapping("names")
+    public ResponseEntity<Map<Long, String>> queryNameMapByIds(@RequestParam("ids")List<Long> ids){
+        return ResponseEntity.ok().eTag(this.categoryService.getTree().getVersion())
+                .body(this.categoryService.queryNameMapByIds(ids));
+    }
+
+    /**
+     * 根据id集合查询从一级分类开始的名称路径，结果按传入的顺序
+     * @param ids
+     * @return
+     */
+    @GetMapping("paths")
+    public ResponseEntity<Map<Long, List<String>>> queryPathsByIds(@RequestParam("ids")List<Long> ids){
+        return ResponseEntity.ok().eTag(this.categoryService.getTree().getVersion())
+                .body(this.categoryService.queryPathsByIds(ids));
+    }
+
+    /**
+     * 当前分类树的版本，分类有变化时版本才会改变，调用方可以据此判断本地缓存是否过期
+     * @return
+     */
+    @GetMapping("version")
+    public ResponseEntity<String> queryVersion(){
+        return ResponseEntity.ok(this.categoryService.getTree().getVersion());
     }
 }
 
@@ -1,6 +1,7 @@
 package com.leyou.item.control;
 
 import com.leyou.common.pojo.PageResult;
+import com.leyou.item.bo.SpuIndexbo;
 import com.leyou.item.bo.Spubo;
 import com.leyou.item.pojo.Sku;
 import com.leyou.item.pojo.Spu;
@@ -17,6 +18,11 @@ import java.util.List;
 
 @Controller
 public class GoodsController {
+    /**
+     * 游标分页每页最多的条数
+     */
+    private static final int MAX_SCAN_ROWS = 100;
+
     @Autowired
     private GoodsService goodsService;
 
@@ -42,6 +48,34 @@ public class GoodsController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * 按id游标分页查询spu
+     * @param key
+     * @param saleable
+     * @param cursor
+     * @param rows 1到100
+     * @param withTotal
+     * @return
+     */
+    @GetMapping("spu/scan")
+    public ResponseEntity<PageResult<Spubo>> querySpuByCursor(
+            @RequestParam(value = "key",required = false)String key,
+            @RequestParam(value = "saleable",required = false)Boolean saleable,
+            @RequestParam(value = "cursor",required = false)String cursor,
+            @RequestParam(value = "rows",defaultValue = "100")Integer rows,
+            @RequestParam(value = "withTotal",defaultValue = "false")Boolean withTotal
+    ){
+        if(rows == null || rows < 1 || rows > MAX_SCAN_ROWS){
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            //items为空表示已经没有数据
+            return ResponseEntity.ok(this.goodsService.querySpuByCursor(key,saleable,cursor,rows,withTotal));
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PostMapping("goods")
     public ResponseEntity<Void> saveGoods(@RequestBody Spubo spubo){
         this.goodsService.saveGoods(spubo);
@@ -55,7 +89,12 @@ public class GoodsController {
      */
     @PutMapping("goods")
     public ResponseEntity<Void> updateGoods(@RequestBody Spubo spubo){
-        this.goodsService.updateGoods(spubo);
+        try {
+            this.goodsService.updateGoods(spubo);
+        } catch (IllegalArgumentException e) {
+            //sku的indexes重复
+            return ResponseEntity.badRequest().build();
+        }
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
@@ -87,6 +126,16 @@ public class GoodsController {
         return ResponseEntity.ok(skus);
     }
 
+    /**
+     * 根据spuId集合批量查询sku集合
+     * @param spuIds
+     * @return
+     */
+    @GetMapping("sku/list/ids")
+    public ResponseEntity<List<Sku>> querySkusBySpuIds(@RequestParam("ids")List<Long> spuIds){
+        return ResponseEntity.ok(this.goodsService.querySkusBySpuIds(spuIds));
+    }
+
     @GetMapping("{id}")
     public ResponseEntity<Spu> querySpuById(@PathVariable("id")Long id){
         Spu spu=this.goodsService.querySpuById(id);
@@ -95,6 +144,30 @@ public class GoodsController {
         }
         return ResponseEntity.ok(spu);
     }
+
+    /**
+     * 按id顺序查询lastId之后的一批spuId，返回空集合表示已经到末尾
+     * @param lastId
+     * @param rows
+     * @return
+     */
+    @GetMapping("spu/ids")
+    public ResponseEntity<List<Long>> querySpuIdsAfter(
+            @RequestParam(value = "lastId",defaultValue = "0")Long lastId,
+            @RequestParam(value = "rows",defaultValue = "100")Integer rows
+    ){
+        return ResponseEntity.ok(this.goodsService.querySpuIdsAfter(lastId,rows));
+    }
+
+    /**
+     * 根据spuId集合批量查询构建索引所需的数据，已删除的spu不会出现在结果中
+     * @param ids
+     * @return
+     */
+    @GetMapping("spu/index")
+    public ResponseEntity<List<SpuIndexbo>> querySpuIndexByIds(@RequestParam("ids")List<Long> ids){
+        return ResponseEntity.ok(this.goodsService.querySpuIndexByIds(ids));
+    }
 }
 
 
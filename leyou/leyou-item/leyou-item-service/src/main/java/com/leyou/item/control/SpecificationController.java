@@ -4,13 +4,11 @@ import com.leyou.item.pojo.SpecGroup;
 import com.leyou.item.pojo.SpecParam;
 import com.leyou.item.service.SpecificationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.CollectionUtils;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 
@@ -62,16 +60,40 @@ public class SpecificationController {
         }
         return ResponseEntity.ok(groups);
     }
-}
-
-
-
-
-
-
 
+    @PostMapping("group")
+    public ResponseEntity<Void> saveGroup(@RequestBody SpecGroup group){
+        this.specificationService.saveGroup(group);
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
 
+    @PutMapping("group")
+    public ResponseEntity<Void> updateGroup(@RequestBody SpecGroup group){
+        this.specificationService.updateGroup(group);
+        return ResponseEntity.noContent().build();
+    }
 
+    @DeleteMapping("group/{id}")
+    public ResponseEntity<Void> deleteGroup(@PathVariable("id")Long id){
+        this.specificationService.deleteGroup(id);
+        return ResponseEntity.ok().build();
+    }
 
+    @PostMapping("param")
+    public ResponseEntity<Void> saveParam(@RequestBody SpecParam param){
+        this.specificationService.saveParam(param);
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
 
+    @PutMapping("param")
+    public ResponseEntity<Void> updateParam(@RequestBody SpecParam param){
+        this.specificationService.updateParam(param);
+        return ResponseEntity.noContent().build();
+    }
 
+    @DeleteMapping("param/{id}")
+    public ResponseEntity<Void> deleteParam(@PathVariable("id")Long id){
+        this.specificationService.deleteParam(id);
+        return ResponseEntity.ok().build();
+    }
+}
@@ -1,18 +1,64 @@
 package com.leyou.item.mapper;
 
+import com.leyou.item.bo.Brandbo;
 import com.leyou.item.pojo.Brand;
 import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import tk.mybatis.mapper.additional.idlist.SelectByIdListMapper;
 import tk.mybatis.mapper.common.Mapper;
 
 import java.util.List;
+import java.util.Map;
 
-public interface BrandMapper extends Mapper<Brand> {
+public interface BrandMapper extends Mapper<Brand>, SelectByIdListMapper<Brand,Long> {
 
-    @Insert("INSERT INTO tb_category_brand (category_id, brand_id) values (#{cid}, #{bid})")
-    void insertCategoryAndBrand(@Param("cid") Long cid,@Param("bid") Long bid);
+    /**
+     * 一条多行insert新增品牌的所有分类关联
+     */
+    @Insert({"<script>",
+            "insert into tb_category_brand (category_id, brand_id) values",
+            "<foreach collection='cids' item='cid' separator=','>(#{cid}, #{bid})</foreach>",
+            "</script>"})
+    int insertCategoryBrands(@Param("bid") Long bid, @Param("cids") List<Long> cids);
 
-    @Select("select * from tb_brand a inner join tb_category_brand b on a.id=b.brand_id where b.category_id=#{cid}")
-    List<Brand> selectBrandsByCid(Long cid);
+    /**
+     * 一条多行insert新增多个品牌的分类关联，每个品牌的cids都不能为空
+     */
+    @Insert({"<script>",
+            "insert into tb_category_brand (category_id, brand_id) values",
+            "<foreach collection='brands' item='brand' separator=','>",
+            "<foreach collection='brand.cids' item='cid' separator=','>(#{cid}, #{brand.id})</foreach>",
+            "</foreach>",
+            "</script>"})
+    int insertCategoryBrandsOf(@Param("brands") List<Brandbo> brands);
+
+    /**
+     * 一条多行insert批量新增品牌，自增id回填到每个品牌中
+     */
+    @Insert({"<script>",
+            "insert into tb_brand (name, image, letter) values",
+            "<foreach collection='brands' item='brand' separator=','>(#{brand.name}, #{brand.image}, #{brand.letter})</foreach>",
+            "</script>"})
+    @Options(useGeneratedKeys = true, keyProperty = "brands.id", keyColumn = "id")
+    int insertBrands(@Param("brands") List<? extends Brand> brands);
+
+    @Select("select category_id, brand_id from tb_category_brand")
+    List<Map<String, Object>> selectCategoryBrands();
+
+    /**
+     * 按名称或首字母搜索品牌。phrase不为空时只按名称走全文索引，此时key至少两个字符，不可能等于首字母，
+     * 不加or letter条件，避免mysql放弃全文索引；否则key只有一个字符，按名称模糊查询或者按首字母查询
+     */
+    @Select({"<script>",
+            "select * from tb_brand",
+            "<where>",
+            "<choose>",
+            "<when test='phrase != null'>match(name) against(#{phrase} in boolean mode)</when>",
+            "<when test='key != null'>name like concat('%', #{key}, '%') or letter = #{key}</when>",
+            "</choose>",
+            "</where>",
+            "</script>"})
+    List<Brand> selectByName(@Param("key") String key, @Param("phrase") String phrase);
 }
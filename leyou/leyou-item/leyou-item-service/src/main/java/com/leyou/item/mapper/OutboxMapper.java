@@ -0,0 +1,47 @@
+package com.leyou.item.mapper;
+
+import com.leyou.item.pojo.Outbox;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import tk.mybatis.mapper.common.Mapper;
+
+import java.util.Date;
+import java.util.List;
+
+public interface OutboxMapper extends Mapper<Outbox> {
+
+    /**
+     * 按写入顺序取出未投递的消息并加锁，其他实例跳过已被锁住的行
+     */
+    @Select("select * from tb_outbox where status = 0 order by id limit #{limit} for update skip locked")
+    List<Outbox> selectPendingForUpdate(@Param("limit") int limit);
+
+    /**
+     * 一条多行insert批量写入消息
+     */
+    @Insert({"<script>",
+            "insert into tb_outbox (routing_key, payload, headers, status, attempts, created_time) values",
+            "<foreach collection='messages' item='m' separator=','>",
+            "(#{m.routingKey}, #{m.payload}, #{m.headers}, #{m.status}, #{m.attempts}, #{m.createdTime})",
+            "</foreach>",
+            "</script>"})
+    int insertOutboxes(@Param("messages") List<Outbox> messages);
+
+    @Update({"<script>",
+            "update tb_outbox set status = 1, sent_time = #{sentTime} where id in",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int markSent(@Param("ids") List<Long> ids, @Param("sentTime") Date sentTime);
+
+    @Update({"<script>",
+            "update tb_outbox set attempts = attempts + 1 where id in",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int incrementAttempts(@Param("ids") List<Long> ids);
+
+    @Delete("delete from tb_outbox where status = 1 and sent_time < #{before} limit #{limit}")
+    int deleteSentBefore(@Param("before") Date before, @Param("limit") int limit);
+}
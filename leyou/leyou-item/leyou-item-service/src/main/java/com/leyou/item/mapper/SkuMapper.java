@@ -1,7 +1,57 @@
 package com.leyou.item.mapper;
 
 import com.leyou.item.pojo.Sku;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import tk.mybatis.mapper.additional.idlist.IdListMapper;
 import tk.mybatis.mapper.common.Mapper;
 
-public interface SkuMapper extends Mapper<Sku> {
+import java.util.List;
+
+public interface SkuMapper extends Mapper<Sku>, IdListMapper<Sku,Long> {
+
+    /**
+     * 查询spu下所有sku，库存一起关联查出
+     */
+    @Select("select a.*, b.stock from tb_sku a left join tb_stock b on a.id=b.sku_id where a.spu_id=#{spuId}")
+    List<Sku> selectWithStockBySpuId(@Param("spuId") Long spuId);
+
+    /**
+     * 批量查询多个spu下所有sku，库存一起关联查出
+     */
+    @Select({"<script>",
+            "select a.*, b.stock from tb_sku a left join tb_stock b on a.id=b.sku_id where a.spu_id in",
+            "<foreach collection='spuIds' item='spuId' open='(' separator=',' close=')'>#{spuId}</foreach>",
+            "</script>"})
+    List<Sku> selectWithStockBySpuIds(@Param("spuIds") List<Long> spuIds);
+
+    /**
+     * 一条多行insert批量新增sku，自增id回填到每个sku中
+     */
+    @Insert({"<script>",
+            "insert into tb_sku (spu_id, title, images, price, own_spec, indexes, enable, create_time, last_update_time) values",
+            "<foreach collection='skus' item='sku' separator=','>",
+            "(#{sku.spuId}, #{sku.title}, #{sku.image}, #{sku.price}, #{sku.ownSpec}, #{sku.indexes}, #{sku.enable}, #{sku.createTime}, #{sku.lastUpdateTime})",
+            "</foreach>",
+            "</script>"})
+    @Options(useGeneratedKeys = true, keyProperty = "skus.id", keyColumn = "id")
+    int insertSkus(@Param("skus") List<Sku> skus);
+
+    /**
+     * 一条sql批量更新已有的sku，只update不insert，已经被删除的sku不会被重新创建
+     */
+    @Update({"<script>",
+            "update tb_sku set",
+            "title = case id <foreach collection='skus' item='sku'>when #{sku.id} then #{sku.title} </foreach>end,",
+            "images = case id <foreach collection='skus' item='sku'>when #{sku.id} then #{sku.image} </foreach>end,",
+            "price = case id <foreach collection='skus' item='sku'>when #{sku.id} then #{sku.price} </foreach>end,",
+            "own_spec = case id <foreach collection='skus' item='sku'>when #{sku.id} then #{sku.ownSpec} </foreach>end,",
+            "enable = case id <foreach collection='skus' item='sku'>when #{sku.id} then #{sku.enable} </foreach>end,",
+            "last_update_time = case id <foreach collection='skus' item='sku'>when #{sku.id} then #{sku.lastUpdateTime} </foreach>end",
+            "where id in <foreach collection='skus' item='sku' open='(' separator=',' close=')'>#{sku.id}</foreach>",
+            "</script>"})
+    int updateSkus(@Param("skus") List<Sku> skus);
 }
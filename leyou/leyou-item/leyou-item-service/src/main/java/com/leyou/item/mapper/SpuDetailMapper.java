@@ -1,7 +1,8 @@
 package com.leyou.item.mapper;
 
 import com.leyou.item.pojo.SpuDetail;
+import tk.mybatis.mapper.additional.idlist.SelectByIdListMapper;
 import tk.mybatis.mapper.common.Mapper;
 
-public interface SpuDetailMapper extends Mapper<SpuDetail> {
+public interface SpuDetailMapper extends Mapper<SpuDetail>, SelectByIdListMapper<SpuDetail,Long> {
 }
@@ -1,7 +1,45 @@
 package com.leyou.item.mapper;
 
 import com.leyou.item.pojo.Spu;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import tk.mybatis.mapper.additional.idlist.SelectByIdListMapper;
 import tk.mybatis.mapper.common.Mapper;
 
-public interface SpuMapper extends Mapper<Spu> {
+import java.util.List;
+
+public interface SpuMapper extends Mapper<Spu>, SelectByIdListMapper<Spu,Long> {
+
+    @Select("select id from tb_spu where id > #{lastId} order by id limit #{rows}")
+    List<Long> selectIdsAfter(@Param("lastId") Long lastId, @Param("rows") Integer rows);
+
+    /**
+     * 按标题搜索spu，phrase不为空时使用全文索引，否则按key模糊查询；lastId不为空时按id游标分页
+     */
+    @Select({"<script>",
+            "select * from tb_spu",
+            "<where>",
+            "<choose>",
+            "<when test='phrase != null'>match(title) against(#{phrase} in boolean mode)</when>",
+            "<when test='key != null'>title like concat('%', #{key}, '%')</when>",
+            "</choose>",
+            "<if test='saleable != null'>and saleable = #{saleable}</if>",
+            "<if test='lastId != null'>and id &gt; #{lastId}</if>",
+            "</where>",
+            "<if test='lastId != null'>order by id</if>",
+            "</script>"})
+    List<Spu> selectByTitle(@Param("key") String key, @Param("phrase") String phrase,
+                            @Param("saleable") Boolean saleable, @Param("lastId") Long lastId);
+
+    @Select({"<script>",
+            "select count(*) from tb_spu",
+            "<where>",
+            "<choose>",
+            "<when test='phrase != null'>match(title) against(#{phrase} in boolean mode)</when>",
+            "<when test='key != null'>title like concat('%', #{key}, '%')</when>",
+            "</choose>",
+            "<if test='saleable != null'>and saleable = #{saleable}</if>",
+            "</where>",
+            "</script>"})
+    long countByTitle(@Param("key") String key, @Param("phrase") String phrase, @Param("saleable") Boolean saleable);
 }
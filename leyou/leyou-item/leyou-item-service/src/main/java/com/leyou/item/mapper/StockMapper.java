@@ -1,7 +1,31 @@
 package com.leyou.item.mapper;
 
 import com.leyou.item.pojo.Stock;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import tk.mybatis.mapper.additional.idlist.IdListMapper;
 import tk.mybatis.mapper.common.Mapper;
 
-public interface StockMapper extends Mapper<Stock> {
+import java.util.List;
+
+public interface StockMapper extends Mapper<Stock>, IdListMapper<Stock,Long> {
+
+    /**
+     * 一条多行insert批量新增库存
+     */
+    @Insert({"<script>",
+            "insert into tb_stock (sku_id, stock) values",
+            "<foreach collection='stocks' item='stock' separator=','>(#{stock.skuId}, #{stock.stock})</foreach>",
+            "</script>"})
+    int insertStocks(@Param("stocks") List<Stock> stocks);
+
+    /**
+     * 批量写入库存，已存在的只更新库存数量
+     */
+    @Insert({"<script>",
+            "insert into tb_stock (sku_id, stock) values",
+            "<foreach collection='stocks' item='stock' separator=','>(#{stock.skuId}, #{stock.stock})</foreach>",
+            "on duplicate key update stock = values(stock)",
+            "</script>"})
+    int upsertStocks(@Param("stocks") List<Stock> stocks);
 }
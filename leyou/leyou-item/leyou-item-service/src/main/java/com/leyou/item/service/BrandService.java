@@ -3,22 +3,58 @@ package com.leyou.item.service;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import com.leyou.common.pojo.PageResult;
+import com.leyou.item.bo.Brandbo;
 import com.leyou.item.mapper.BrandMapper;
 import com.leyou.item.pojo.Brand;
+import com.leyou.item.pojo.BrandImportResult;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
-import tk.mybatis.mapper.entity.Example;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class BrandService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrandService.class);
+
     @Autowired
     private BrandMapper brandMapper;
 
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private CategoryBrandIndex categoryBrandIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 批量导入时每个事务包含的品牌数
+     */
+    @Value("${leyou.item.brand-import.batch-size:500}")
+    private int importBatchSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+    }
+
     /**
      * 根据查询条件分页并排序查询品牌信息
      *
@@ -30,24 +66,17 @@ public class BrandService {
      * @return
      */
     public PageResult<Brand> queryBrandsByPage(String key, Integer page, Integer rows, String sortBy, Boolean desc) {
-        //初始化example对象
-        Example example = new Example(Brand.class);
-        Example.Criteria criteria = example.createCriteria();
-
-        //根据name模糊查询，或者根据首字母查询
-        if (StringUtils.isNotBlank(key)) {
-            criteria.andLike("name", "%" + key + "%").orEqualTo("letter", key);
-        }
-
         //添加分页条件
         PageHelper.startPage(page, rows);
 
         //添加排序条件
         if (StringUtils.isNotBlank(sortBy)) {
-            example.setOrderByClause(sortBy + " " + (desc ? "desc" : "asc"));
+            PageHelper.orderBy(sortBy + " " + (desc ? "desc" : "asc"));
         }
 
-        List<Brand> brands = this.brandMapper.selectByExample(example);
+        //根据name全文检索，或者根据首字母查询
+        String trimmed = StringUtils.trimToNull(key);
+        List<Brand> brands = this.brandMapper.selectByName(trimmed, FulltextKeys.phrase(trimmed));
         //包装成pageInfo
         PageInfo<Brand> pageInfo = new PageInfo<>(brands);
         //包装成分页结果集返回
@@ -66,21 +95,99 @@ public class BrandService {
         //先新增brand
         this.brandMapper.insertSelective(brand);
 
-        //新增中间表
+        //新增中间表，所有分类一条sql写入
+        if (!CollectionUtils.isEmpty(cids)) {
+            this.brandMapper.insertCategoryBrands(brand.getId(), cids);
+        }
+
+        sendMsg("insert", brand.getId());
 
-        cids.forEach(cid -> {
-            this.brandMapper.insertCategoryAndBrand(cid, brand.getId());
+        //事务提交后再更新内存索引，回滚时索引不受影响
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                categoryBrandIndex.add(brand, cids);
+            }
         });
+    }
 
+    /**
+     * 批量导入品牌及其分类关联，每批品牌在一个事务中用多行insert写入，
+     * 失败时只回滚当前批次并继续后面的批次，回滚的品牌在结果中返回，调用方只需要重新导入这些品牌
+     *
+     * @param brands
+     * @return 导入数量、失败的品牌和吞吐
+     */
+    public BrandImportResult importBrands(List<Brandbo> brands) {
+        long start = System.currentTimeMillis();
+        int imported = 0;
+        int links = 0;
+        int batches = 0;
+        int failedBatches = 0;
+        List<String> failedBrands = new ArrayList<>();
+        for (int from = 0; from < brands.size(); from += this.importBatchSize) {
+            List<Brandbo> batch = brands.subList(from, Math.min(from + this.importBatchSize, brands.size()));
+            try {
+                links += this.transactionTemplate.execute(status -> this.importBatch(batch));
+                imported += batch.size();
+                batches++;
+            } catch (RuntimeException e) {
+                LOGGER.warn("failed to import brands {} to {}", from, from + batch.size() - 1, e);
+                failedBatches++;
+                batch.forEach(brand -> failedBrands.add(brand.getName()));
+            }
+        }
+
+        BrandImportResult result = new BrandImportResult();
+        result.setBrands(imported);
+        result.setLinks(links);
+        result.setBatches(batches);
+        result.setFailedBatches(failedBatches);
+        result.setFailedBrands(failedBrands);
+        result.setMillis(System.currentTimeMillis() - start);
+        result.setBrandsPerSecond(imported * 1000.0 / Math.max(1, result.getMillis()));
+        LOGGER.info("imported {} brands with {} category links in {} batches ({} failed), {} ms, {} brands/s",
+                result.getBrands(), result.getLinks(), result.getBatches(), result.getFailedBatches(), result.getMillis(),
+                String.format("%.1f", result.getBrandsPerSecond()));
+        return result;
+    }
+
+    private int importBatch(List<Brandbo> batch) {
+        this.brandMapper.insertBrands(batch);
+
+        List<Brandbo> linked = batch.stream()
+                .filter(brand -> !CollectionUtils.isEmpty(brand.getCids()))
+                .collect(Collectors.toList());
+        int links = linked.isEmpty() ? 0 : this.brandMapper.insertCategoryBrandsOf(linked);
+
+        List<Long> ids = new ArrayList<>(batch.size());
+        batch.forEach(brand -> ids.add(brand.getId()));
+        this.outboxService.addAll("brand.insert", ids);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                categoryBrandIndex.addAll(linked);
+            }
+        });
+        return links;
+    }
+
+    private void sendMsg(String type, Long id) {
+        this.outboxService.add("brand." + type, id);
     }
 
     public List<Brand> queryBrandsByCid(Long cid) {
-        return this.brandMapper.selectBrandsByCid(cid);
+        return this.categoryBrandIndex.getBrands(cid);
     }
 
     public Brand queryBrandById(Long id) {
         return this.brandMapper.selectByPrimaryKey(id);
     }
+
+    public List<Brand> queryBrandsByIds(List<Long> ids) {
+        return this.brandMapper.selectByIdList(ids);
+    }
 }
 
 
@@ -0,0 +1,92 @@
+package com.leyou.item.service;
+
+import com.leyou.item.bo.Brandbo;
+import com.leyou.item.mapper.BrandMapper;
+import com.leyou.item.pojo.Brand;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * 分类到品牌的内存索引，每个品牌对象只保存一份，被所有分类共享。
+ * 启动时全量加载，新增品牌事务提交后增量更新，并定时全量重建以同步其他实例的修改。
+ * 返回的集合和品牌对象是共享的，调用方不能修改
+ */
+@Component
+public class CategoryBrandIndex {
+
+    @Autowired
+    private BrandMapper brandMapper;
+
+    /**
+     * 分类id到品牌集合，集合不可变，修改时整体替换
+     */
+    private volatile Map<Long, List<Brand>> brandsByCid = Collections.emptyMap();
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${leyou.item.brand-index.rebuild-millis:600000}", initialDelayString = "${leyou.item.brand-index.rebuild-millis:600000}")
+    public synchronized void rebuild() {
+        Map<Long, Brand> brands = new HashMap<>();
+        this.brandMapper.selectAll().forEach(brand -> brands.put(brand.getId(), brand));
+
+        Map<Long, List<Brand>> index = new HashMap<>();
+        for (Map<String, Object> row : this.brandMapper.selectCategoryBrands()) {
+            Brand brand = brands.get(((Number) row.get("brand_id")).longValue());
+            if (brand != null) {
+                index.computeIfAbsent(((Number) row.get("category_id")).longValue(), cid -> new ArrayList<>()).add(brand);
+            }
+        }
+        index.replaceAll((cid, list) -> {
+            list.sort(Comparator.comparing(Brand::getId));
+            return Collections.unmodifiableList(list);
+        });
+        this.brandsByCid = index;
+    }
+
+    /**
+     * 新增品牌后更新索引，只替换受影响分类的集合
+     * @param brand
+     * @param cids
+     */
+    public synchronized void add(Brand brand, Collection<Long> cids) {
+        Map<Long, List<Brand>> index = new HashMap<>(this.brandsByCid);
+        this.put(index, brand, cids);
+        this.brandsByCid = index;
+    }
+
+    /**
+     * 批量导入品牌后更新索引，所有品牌只复制一次索引
+     * @param brands
+     */
+    public synchronized void addAll(Collection<Brandbo> brands) {
+        Map<Long, List<Brand>> index = new HashMap<>(this.brandsByCid);
+        brands.forEach(brand -> this.put(index, brand, brand.getCids()));
+        this.brandsByCid = index;
+    }
+
+    private void put(Map<Long, List<Brand>> index, Brand brand, Collection<Long> cids) {
+        //品牌可以不关联分类，此时没有需要更新的集合
+        if (cids == null) {
+            return;
+        }
+        for (Long cid : cids) {
+            List<Brand> list = new ArrayList<>(index.getOrDefault(cid, Collections.emptyList()));
+            list.removeIf(old -> old.getId().equals(brand.getId()));
+            list.add(brand);
+            list.sort(Comparator.comparing(Brand::getId));
+            index.put(cid, Collections.unmodifiableList(list));
+        }
+    }
+
+    /**
+     * 查询分类下的品牌，不访问数据库
+     * @param cid
+     * @return
+     */
+    public List<Brand> getBrands(Long cid) {
+        return this.brandsByCid.getOrDefault(cid, Collections.emptyList());
+    }
+}
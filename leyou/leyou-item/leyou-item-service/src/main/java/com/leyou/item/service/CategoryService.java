@@ -2,42 +2,106 @@ package com.leyou.item.service;
 
 import com.leyou.item.mapper.CategoryMapper;
 import com.leyou.item.pojo.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+/**
+ * 分类数据很少且很少修改，全部加载到内存中的分类树快照，查询不访问数据库。
+ * 定时重新加载，内容变化时原子替换快照
+ */
 @Service
 public class CategoryService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CategoryService.class);
+
     @Autowired
     private CategoryMapper categoryMapper;
 
+    private final AtomicReference<CategoryTree> tree = new AtomicReference<>();
+
+    @PostConstruct
+    public void init() {
+        this.reload();
+    }
+
+    /**
+     * 重新加载分类树，内容没有变化时保留原来的快照
+     */
+    @Scheduled(fixedDelayString = "${leyou.item.category.refresh-millis:60000}", initialDelayString = "${leyou.item.category.refresh-millis:60000}")
+    public void reload() {
+        CategoryTree loaded = new CategoryTree(this.categoryMapper.selectAll());
+        CategoryTree current = this.tree.get();
+        if (current == null || !current.getVersion().equals(loaded.getVersion())) {
+            this.tree.set(loaded);
+            LOGGER.info("category tree loaded, version {}", loaded.getVersion());
+        }
+    }
+
+    /**
+     * 当前的分类树快照
+     * @return
+     */
+    public CategoryTree getTree() {
+        return this.tree.get();
+    }
+
     /**
      * 根据父节点查询子节点
      * @param pid
      * @return
      */
     public List<Category> queryCategoriesByPid(Long pid){
-        Category record=new Category();
-        record.setParentId(pid);
-        return this.categoryMapper.select(record);
+        return this.tree.get().getChildren(pid);
     }
 
     public List<String> queryNameByIds(List<Long> ids){
-        List<Category> categories = this.categoryMapper.selectByIdList(ids);
-        return categories.stream().map(category -> category.getName()).collect(Collectors.toList());
+        return this.tree.get().getAll(ids).stream().map(category -> category.getName()).collect(Collectors.toList());
     }
-}
-
-
-
-
-
-
-
-
 
+    /**
+     * 根据id集合批量查询分类
+     * @param ids
+     * @return
+     */
+    public List<Category> queryCategoriesByIds(List<Long> ids){
+        return this.tree.get().getAll(ids);
+    }
 
+    /**
+     * 根据id集合查询分类名称，按传入的顺序，不存在的id不包含在结果中
+     * @param ids
+     * @return
+     */
+    public Map<Long, String> queryNameMapByIds(List<Long> ids){
+        Map<Long, String> names = new LinkedHashMap<>();
+        this.tree.get().getAll(ids).forEach(category -> names.put(category.getId(), category.getName()));
+        return names;
+    }
 
+    /**
+     * 根据id集合查询从一级分类开始的完整名称路径，按传入的顺序，不存在的id不包含在结果中
+     * @param ids
+     * @return
+     */
+    public Map<Long, List<String>> queryPathsByIds(List<Long> ids){
+        CategoryTree current = this.tree.get();
+        Map<Long, List<String>> paths = new LinkedHashMap<>();
+        ids.forEach(id -> {
+            List<String> path = current.getPath(id);
+            if (!path.isEmpty()) {
+                paths.put(id, path);
+            }
+        });
+        return paths;
+    }
+}
@@ -0,0 +1,101 @@
+package com.leyou.item.service;
+
+import com.leyou.item.pojo.Category;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 分类树的不可变快照：id到分类、父节点到子节点、id到从根开始的名称路径。
+ * 版本号由全部分类的内容计算得到，内容相同的快照在所有实例上版本号都相同，可以直接作为ETag。
+ * 快照中的Category对象是共享的，调用方不能修改
+ */
+public final class CategoryTree {
+
+    private final String version;
+    private final Map<Long, Category> nodes;
+    private final Map<Long, List<Category>> children;
+    private final Map<Long, List<String>> paths;
+
+    public CategoryTree(List<Category> categories) {
+        List<Category> sorted = new ArrayList<>(categories);
+        sorted.sort(Comparator.comparing(Category::getId));
+
+        Map<Long, Category> nodes = new HashMap<>(sorted.size() * 2);
+        Map<Long, List<Category>> children = new HashMap<>();
+        CRC32 crc = new CRC32();
+        for (Category category : sorted) {
+            nodes.put(category.getId(), category);
+            children.computeIfAbsent(category.getParentId(), pid -> new ArrayList<>()).add(category);
+            String row = category.getId() + "," + category.getParentId() + "," + category.getName() + ","
+                    + category.getIsParent() + "," + category.getSort() + ";";
+            crc.update(row.getBytes(StandardCharsets.UTF_8));
+        }
+        children.replaceAll((pid, list) -> Collections.unmodifiableList(list));
+
+        Map<Long, List<String>> paths = new HashMap<>(sorted.size() * 2);
+        for (Category category : sorted) {
+            paths.put(category.getId(), Collections.unmodifiableList(path(category, nodes)));
+        }
+
+        this.version = Long.toHexString(crc.getValue()) + "-" + sorted.size();
+        this.nodes = Collections.unmodifiableMap(nodes);
+        this.children = Collections.unmodifiableMap(children);
+        this.paths = Collections.unmodifiableMap(paths);
+    }
+
+    private static List<String> path(Category category, Map<Long, Category> nodes) {
+        LinkedList<String> names = new LinkedList<>();
+        Set<Long> visited = new HashSet<>();
+        Category current = category;
+        //防止数据错误形成环
+        while (current != null && visited.add(current.getId())) {
+            names.addFirst(current.getName());
+            current = nodes.get(current.getParentId());
+        }
+        return new ArrayList<>(names);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public Category get(Long id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * 子节点，按id排序
+     * @param pid
+     * @return 没有子节点时返回空集合
+     */
+    public List<Category> getChildren(Long pid) {
+        return children.getOrDefault(pid, Collections.emptyList());
+    }
+
+    /**
+     * 从根节点到该节点的名称
+     * @param id
+     * @return 不存在时返回空集合
+     */
+    public List<String> getPath(Long id) {
+        return paths.getOrDefault(id, Collections.emptyList());
+    }
+
+    /**
+     * 按传入的顺序获取分类，跳过不存在的id
+     * @param ids
+     * @return
+     */
+    public List<Category> getAll(Collection<Long> ids) {
+        List<Category> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Category category = nodes.get(id);
+            if (category != null) {
+                result.add(category);
+            }
+        }
+        return result;
+    }
+}
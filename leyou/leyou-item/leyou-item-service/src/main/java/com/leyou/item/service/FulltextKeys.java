@@ -0,0 +1,31 @@
+package com.leyou.item.service;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * 把后台搜索的关键字转换成全文索引boolean mode下的短语查询
+ */
+public final class FulltextKeys {
+
+    /**
+     * 和mysql的ngram_token_size保持一致，更短的关键字无法命中全文索引
+     */
+    private static final int NGRAM_TOKEN_SIZE = 2;
+
+    private FulltextKeys() {
+    }
+
+    /**
+     * 转换成短语查询，ngram分词后短语查询等价于按子串匹配
+     * @param key
+     * @return 关键字太短无法使用全文索引时返回null
+     */
+    public static String phrase(String key) {
+        //去掉短语中不能出现的双引号
+        String trimmed = StringUtils.trimToEmpty(StringUtils.remove(key, '"'));
+        if (trimmed.length() < NGRAM_TOKEN_SIZE) {
+            return null;
+        }
+        return "\"" + trimmed + "\"";
+    }
+}
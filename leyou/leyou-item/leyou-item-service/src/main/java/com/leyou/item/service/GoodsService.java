@@ -1,24 +1,25 @@
 package com.leyou.item.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.pagehelper.PageHelper;
-import com.github.pagehelper.PageInfo;
 import com.leyou.common.pojo.PageResult;
+import com.leyou.item.bo.SpuIndexbo;
 import com.leyou.item.bo.Spubo;
 import com.leyou.item.mapper.*;
 import com.leyou.item.pojo.*;
 import org.apache.commons.lang.StringUtils;
-import org.springframework.amqp.AmqpException;
-import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import tk.mybatis.mapper.entity.Example;
+import org.springframework.util.CollectionUtils;
 
-import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class GoodsService {
@@ -31,6 +32,9 @@ public class GoodsService {
     @Autowired
     private CategoryService categoryService;
 
+    @Autowired
+    private SpecificationService specificationService;
+
     @Autowired
     private SpuDetailMapper spuDetailMapper;
 
@@ -41,7 +45,40 @@ public class GoodsService {
     private StockMapper stockMapper;
 
     @Autowired
-    private AmqpTemplate amqpTemplate;
+    private OutboxService outboxService;
+
+    /**
+     * item.update消息头：发生变化（新增或修改）的skuId，逗号分隔
+     */
+    public static final String HEADER_CHANGED_SKU_IDS = "changedSkuIds";
+
+    /**
+     * item.update消息头：被删除的skuId，逗号分隔
+     */
+    public static final String HEADER_DELETED_SKU_IDS = "deletedSkuIds";
+
+    /**
+     * item.update消息头：变化的sku太多时不再列出skuId，消费者按整个spu处理
+     */
+    public static final String HEADER_FULL_SPU = "fullSpu";
+
+    /**
+     * 消息头中最多列出的skuId数量
+     */
+    private static final int MAX_HEADER_SKU_IDS = 200;
+
+    /**
+     * 多行insert每条sql最多包含的行数
+     */
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    /**
+     * 查询条件到spu总数的缓存，分页时不需要每页都count
+     */
+    private final Cache<String, Long> spuCounts = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .build();
 
     /**
      * 根据条件分页查询spu
@@ -52,41 +89,90 @@ public class GoodsService {
      * @return
      */
     public PageResult<Spubo> querySpuByPage(String key, Boolean saleable, Integer page, Integer rows) {
-        Example example = new Example(Spu.class);
-        Example.Criteria criteria = example.createCriteria();
+        //添加分页，总数使用缓存，不再每页都执行count
+        PageHelper.startPage(page,rows,false);
 
-        //添加查询条件
-        if(StringUtils.isNotBlank(key)){
-            criteria.andLike("title","%"+key+"%");
-        }
+        //执行查询，获取spu集合，标题使用全文索引
+        String trimmed = StringUtils.trimToNull(key);
+        List<Spu> spus=this.spuMapper.selectByTitle(trimmed,FulltextKeys.phrase(trimmed),saleable,null);
+
+        //返回pageResult<spubo>
+        return new PageResult<>(this.countSpu(key,saleable),this.toSpubos(spus));
+    }
 
-        //添加上下架的过滤条件
-        if(saleable != null){
-            criteria.andEqualTo("saleable",saleable);
+    /**
+     * 按id游标分页查询spu，通过id > 游标定位，翻到任何位置的代价都相同
+     * @param key
+     * @param saleable
+     * @param cursor 上一页返回的nextCursor，为空时从头开始
+     * @param rows 每页条数，必须大于0
+     * @param withTotal 是否返回总数，总数会被缓存一段时间
+     * @return nextCursor为null表示已经是最后一页
+     */
+    public PageResult<Spubo> querySpuByCursor(String key, Boolean saleable, String cursor, Integer rows, boolean withTotal) {
+        if (rows == null || rows < 1) {
+            throw new IllegalArgumentException("rows must be positive: " + rows);
+        }
+        long lastId = StringUtils.isBlank(cursor) ? 0L : Long.parseLong(cursor);
+
+        //多查一条判断是否还有下一页
+        PageHelper.startPage(1, rows + 1, false);
+        String trimmed = StringUtils.trimToNull(key);
+        List<Spu> spus = this.spuMapper.selectByTitle(trimmed, FulltextKeys.phrase(trimmed), saleable, lastId);
+        boolean hasMore = spus.size() > rows;
+        if (hasMore) {
+            spus = spus.subList(0, rows);
         }
 
-        //添加分页
-        PageHelper.startPage(page,rows);
+        PageResult<Spubo> result = new PageResult<>(withTotal ? this.countSpu(key, saleable) : null, this.toSpubos(spus));
+        if (hasMore) {
+            result.setNextCursor(String.valueOf(spus.get(spus.size() - 1).getId()));
+        }
+        return result;
+    }
 
-        //执行查询，获取spu集合
-        List<Spu> spus=this.spuMapper.selectByExample(example);
-        PageInfo<Spu> pageInfo = new PageInfo<>(spus);
+    /**
+     * 符合条件的spu总数，相同的条件在缓存有效期内只count一次
+     * @param key
+     * @param saleable
+     * @return
+     */
+    private Long countSpu(String key, Boolean saleable) {
+        String trimmed = StringUtils.trimToNull(key);
+        String cacheKey = StringUtils.defaultString(trimmed) + "|" + saleable;
+        return this.spuCounts.get(cacheKey, k -> this.spuMapper.countByTitle(trimmed, FulltextKeys.phrase(trimmed), saleable));
+    }
 
-        //spu集合转化成spubo集合
-        List<Spubo> spuBos = spus.stream().map(spu -> {
+    /**
+     * spu集合转化成spubo集合，一页中所有的品牌和分类各批量查询一次
+     * @param spus
+     * @return
+     */
+    private List<Spubo> toSpubos(List<Spu> spus) {
+        Set<Long> brandIds = new HashSet<>();
+        Set<Long> cids = new HashSet<>();
+        spus.forEach(spu -> {
+            brandIds.add(spu.getBrandId());
+            cids.addAll(Arrays.asList(spu.getCid1(), spu.getCid2(), spu.getCid3()));
+        });
+        Map<Long, String> brandNames = brandIds.isEmpty() ? Collections.emptyMap() :
+                this.brandMapper.selectByIdList(new ArrayList<>(brandIds)).stream()
+                        .collect(Collectors.toMap(Brand::getId, Brand::getName));
+        Map<Long, String> categoryNames = cids.isEmpty() ? Collections.emptyMap() :
+                this.categoryService.queryCategoriesByIds(new ArrayList<>(cids)).stream()
+                        .collect(Collectors.toMap(Category::getId, Category::getName));
+
+        return spus.stream().map(spu -> {
             Spubo spubo = new Spubo();
             BeanUtils.copyProperties(spu, spubo);
-            //查询品牌名称
-            Brand brand = this.brandMapper.selectByPrimaryKey(spu.getBrandId());
-            spubo.setCname(brand.getName());
-            //查询分类名称
-            List<String> names = this.categoryService.queryNameByIds(Arrays.asList(spu.getCid1(), spu.getCid2(), spu.getCid3()));
+            //品牌名称
+            spubo.setCname(brandNames.get(spu.getBrandId()));
+            //分类名称
+            List<String> names = Stream.of(spu.getCid1(), spu.getCid2(), spu.getCid3())
+                    .map(categoryNames::get).filter(Objects::nonNull).collect(Collectors.toList());
             spubo.setBname(StringUtils.join(names, "-"));
             return spubo;
         }).collect(Collectors.toList());
-
-        //返回pageResult<spubo>
-        return new PageResult<>(pageInfo.getTotal(),spuBos);
     }
 
     /**
@@ -113,29 +199,83 @@ public class GoodsService {
         sendMsg("insert",spubo.getId());
     }
 
+    /**
+     * 在当前事务中写入发件箱，提交后异步投递
+     * @param type
+     * @param id
+     */
     private void sendMsg(String type,Long id) {
-        try {
-            this.amqpTemplate.convertAndSend("item."+type,id);
-        } catch (AmqpException e) {
-            e.printStackTrace();
-        }
+        this.outboxService.add("item."+type,id);
     }
 
+    /**
+     * 批量新增sku和库存，每批只需要两次数据库往返
+     * @param spubo
+     */
     private void saveSkuAndStock(Spubo spubo) {
-        spubo.getSkus().forEach(sku -> {
-            //3、sku
+        if (CollectionUtils.isEmpty(spubo.getSkus())) {
+            return;
+        }
+        this.insertSkuAndStock(spubo.getId(), spubo.getSkus(), new Date());
+    }
+
+    private void insertSkuAndStock(Long spuId, List<Sku> skus, Date now) {
+        skus.forEach(sku -> {
             sku.setId(null);
-            sku.setSpuId(spubo.getId());
-            sku.setCreateTime(new Date());
-            sku.setLastUpdateTime(sku.getCreateTime());
-            this.skuMapper.insertSelective(sku);
+            sku.setSpuId(spuId);
+            sku.setCreateTime(now);
+            sku.setLastUpdateTime(now);
+            //多行insert会写入所有列，没有提交的字段使用和表默认值相同的值，不能写入null
+            this.applyDefaults(sku);
+        });
+
+        //分批执行，避免单条sql过大
+        for (int from = 0; from < skus.size(); from += INSERT_BATCH_SIZE) {
+            List<Sku> batch = skus.subList(from, Math.min(from + INSERT_BATCH_SIZE, skus.size()));
+            //3、sku，自增id回填
+            this.skuMapper.insertSkus(batch);
 
             //4、stock
-            Stock stock = new Stock();
-            stock.setSkuId(sku.getId());
-            stock.setStock(sku.getStock());
-            this.stockMapper.insertSelective(stock);
-        });
+            List<Stock> stocks = batch.stream().map(sku -> this.newStock(sku.getId(), sku.getStock())).collect(Collectors.toList());
+            this.stockMapper.insertStocks(stocks);
+        }
+    }
+
+    private Stock newStock(Long skuId, Integer num) {
+        Stock stock = new Stock();
+        stock.setSkuId(skuId);
+        stock.setStock(num);
+        return stock;
+    }
+
+    private void applyDefaults(Sku sku) {
+        if (sku.getEnable() == null) {
+            sku.setEnable(true);
+        }
+        if (sku.getImage() == null) {
+            sku.setImage("");
+        }
+    }
+
+    /**
+     * 用提交的sku整体替换已有sku的字段，为null的字段和新增时一样处理，结果和原来删除后重新新增相同
+     * @param old
+     * @param sku
+     * @return 是否有字段发生了变化
+     */
+    private boolean mergeSku(Sku old, Sku sku) {
+        this.applyDefaults(sku);
+        boolean changed = !Objects.equals(sku.getTitle(), old.getTitle())
+                || !Objects.equals(sku.getImage(), old.getImage())
+                || !Objects.equals(sku.getPrice(), old.getPrice())
+                || !Objects.equals(sku.getOwnSpec(), old.getOwnSpec())
+                || !Objects.equals(sku.getEnable(), old.getEnable());
+        old.setTitle(sku.getTitle());
+        old.setImage(sku.getImage());
+        old.setPrice(sku.getPrice());
+        old.setOwnSpec(sku.getOwnSpec());
+        old.setEnable(sku.getEnable());
+        return changed;
     }
 
     /**
@@ -153,39 +293,101 @@ public class GoodsService {
      * @return
      */
     public List<Sku> querySkusBySpuId(Long spuId) {
-        Sku record = new Sku();
-        record.setSpuId(spuId);
-        List<Sku> skus = this.skuMapper.select(record);
-        skus.forEach(sku -> {
-            Stock stock = this.stockMapper.selectByPrimaryKey(sku.getId());
-            sku.setStock(stock.getStock());
-        });
-        return skus;
+        //sku和库存一次关联查询
+        return this.skuMapper.selectWithStockBySpuId(spuId);
+    }
+
+    /**
+     * 根据spuId集合批量查询sku集合
+     * @param spuIds
+     * @return
+     */
+    public List<Sku> querySkusBySpuIds(List<Long> spuIds) {
+        if (CollectionUtils.isEmpty(spuIds)) {
+            return Collections.emptyList();
+        }
+        return this.skuMapper.selectWithStockBySpuIds(spuIds);
     }
 
     /**
-     * 更新商品信息
+     * 更新商品信息：提交的sku按indexes和已有的sku对应，只更新有变化的sku，新增和删除多出来的sku，
+     * 已有sku的id保持不变。提交的sku是完整的，和新增时一样为null的enable视为true、图片视为空，其余为null的字段清空已有的值，
+     * 只有库存为null时保留原来的库存。
+     * 提交的indexes重复时抛出IllegalArgumentException
      * @param spubo
      * @return
      */
     @Transactional
     public void updateGoods(Spubo spubo) {
-        //根据spuId查询要删除的sku
+        //提交的sku按indexes对应，不允许重复
+        List<Sku> skus = spubo.getSkus() == null ? Collections.emptyList() : spubo.getSkus();
+        Set<String> submitted = new HashSet<>();
+        for (Sku sku : skus) {
+            if (!submitted.add(sku.getIndexes())) {
+                throw new IllegalArgumentException("duplicate sku indexes " + sku.getIndexes());
+            }
+        }
+
+        //查询已有的sku和库存
         Sku record = new Sku();
         record.setSpuId(spubo.getId());
-        List<Sku> skus = this.skuMapper.select(record);
-        skus.forEach(sku -> {
-            //删除stock
-            this.stockMapper.deleteByPrimaryKey(sku.getId());
+        List<Sku> oldSkus = this.skuMapper.select(record);
+        Map<Long, Integer> oldStocks = new HashMap<>();
+        if (!oldSkus.isEmpty()) {
+            this.stockMapper.selectByIdList(oldSkus.stream().map(Sku::getId).collect(Collectors.toList()))
+                    .forEach(stock -> oldStocks.put(stock.getSkuId(), stock.getStock()));
+        }
+        //indexes重复的旧sku只保留第一个，其余的一起删除
+        Map<String, Sku> oldSkuMap = new HashMap<>();
+        List<Long> deletedIds = new ArrayList<>();
+        oldSkus.forEach(sku -> {
+            if (oldSkuMap.putIfAbsent(sku.getIndexes(), sku) != null) {
+                deletedIds.add(sku.getId());
+            }
         });
 
-        //删除sku
-        Sku sku = new Sku();
-        sku.setSpuId(spubo.getId());
-        this.skuMapper.delete(sku);
+        Date now = new Date();
+        List<Sku> insertSkus = new ArrayList<>();
+        List<Sku> updateSkus = new ArrayList<>();
+        List<Stock> stocks = new ArrayList<>();
+        List<Long> changedIds = new ArrayList<>();
+        for (Sku sku : skus) {
+            Sku old = oldSkuMap.remove(sku.getIndexes());
+            if (old == null) {
+                insertSkus.add(sku);
+                continue;
+            }
+            //和已有的sku对比，只处理有变化的字段
+            sku.setId(old.getId());
+            sku.setSpuId(old.getSpuId());
+            boolean changed = this.mergeSku(old, sku);
+            if (changed) {
+                old.setLastUpdateTime(now);
+                updateSkus.add(old);
+            }
+            if (sku.getStock() != null && !sku.getStock().equals(oldStocks.get(old.getId()))) {
+                stocks.add(this.newStock(old.getId(), sku.getStock()));
+                changed = true;
+            }
+            if (changed) {
+                changedIds.add(old.getId());
+            }
+        }
+        //剩下的是需要删除的sku
+        oldSkuMap.values().forEach(sku -> deletedIds.add(sku.getId()));
 
-        //新增stock和spu
-        this.saveSkuAndStock(spubo);
+        if (!deletedIds.isEmpty()) {
+            this.stockMapper.deleteByIdList(deletedIds);
+            this.skuMapper.deleteByIdList(deletedIds);
+        }
+        for (int from = 0; from < updateSkus.size(); from += INSERT_BATCH_SIZE) {
+            this.skuMapper.updateSkus(updateSkus.subList(from, Math.min(from + INSERT_BATCH_SIZE, updateSkus.size())));
+        }
+        for (int from = 0; from < stocks.size(); from += INSERT_BATCH_SIZE) {
+            this.stockMapper.upsertStocks(stocks.subList(from, Math.min(from + INSERT_BATCH_SIZE, stocks.size())));
+        }
+        this.insertSkuAndStock(spubo.getId(), insertSkus, now);
+        insertSkus.forEach(sku -> changedIds.add(sku.getId()));
 
         //更新spu和spuDetail
         spubo.setCreateTime(null);
@@ -196,12 +398,78 @@ public class GoodsService {
 
         this.spuDetailMapper.updateByPrimaryKeySelective(spubo.getSpuDetail());
 
-        sendMsg("update",spubo.getId());
+        //告诉消费者哪些sku发生了变化，太多时只标记整个spu
+        Map<String, String> headers = new HashMap<>();
+        if (changedIds.size() + deletedIds.size() > MAX_HEADER_SKU_IDS) {
+            headers.put(HEADER_FULL_SPU, "true");
+        } else {
+            headers.put(HEADER_CHANGED_SKU_IDS, StringUtils.join(changedIds, ","));
+            headers.put(HEADER_DELETED_SKU_IDS, StringUtils.join(deletedIds, ","));
+        }
+        this.outboxService.add("item.update", spubo.getId(), headers);
     }
 
     public Spu querySpuById(Long id) {
         return this.spuMapper.selectByPrimaryKey(id);
     }
+
+    /**
+     * 按id顺序查询lastId之后的一批spuId，基于主键定位，深度翻页不会变慢
+     * @param lastId
+     * @param rows
+     * @return
+     */
+    public List<Long> querySpuIdsAfter(Long lastId, Integer rows) {
+        return this.spuMapper.selectIdsAfter(lastId, rows);
+    }
+
+    /**
+     * 根据spuId集合批量查询构建索引所需的数据，每类数据只查询一次，不随spu数量增加查询次数
+     * @param ids
+     * @return
+     */
+    public List<SpuIndexbo> querySpuIndexByIds(List<Long> ids) {
+        List<Spu> spus = this.spuMapper.selectByIdList(ids);
+        if (CollectionUtils.isEmpty(spus)) {
+            return Collections.emptyList();
+        }
+
+        //批量查询spuDetail
+        Map<Long, SpuDetail> detailMap = this.spuDetailMapper.selectByIdList(ids).stream()
+                .collect(Collectors.toMap(SpuDetail::getSpuId, Function.identity()));
+        //sku关联库存一次查出，再按spuId分组
+        Map<Long, List<Sku>> skuMap = this.skuMapper.selectWithStockBySpuIds(ids).stream()
+                .collect(Collectors.groupingBy(Sku::getSpuId));
+
+        //收集品牌id和分类id，去重后批量查询
+        Set<Long> brandIds = new HashSet<>();
+        Set<Long> cids = new HashSet<>();
+        Set<Long> cid3s = new HashSet<>();
+        spus.forEach(spu -> {
+            brandIds.add(spu.getBrandId());
+            cids.addAll(Arrays.asList(spu.getCid1(), spu.getCid2(), spu.getCid3()));
+            cid3s.add(spu.getCid3());
+        });
+        Map<Long, Brand> brandMap = this.brandMapper.selectByIdList(new ArrayList<>(brandIds)).stream()
+                .collect(Collectors.toMap(Brand::getId, Function.identity()));
+        Map<Long, String> categoryMap = this.categoryService.queryCategoriesByIds(new ArrayList<>(cids)).stream()
+                .collect(Collectors.toMap(Category::getId, Category::getName));
+        //cid3下所有可搜索的规格参数
+        Map<Long, List<SpecParam>> paramMap = this.specificationService.queryParamsByCids(new ArrayList<>(cid3s), true).stream()
+                .collect(Collectors.groupingBy(SpecParam::getCid));
+
+        return spus.stream().map(spu -> {
+            SpuIndexbo spuIndexbo = new SpuIndexbo();
+            BeanUtils.copyProperties(spu, spuIndexbo);
+            spuIndexbo.setSpuDetail(detailMap.get(spu.getId()));
+            spuIndexbo.setSkus(skuMap.getOrDefault(spu.getId(), Collections.emptyList()));
+            spuIndexbo.setBrand(brandMap.get(spu.getBrandId()));
+            spuIndexbo.setCategoryNames(Arrays.asList(
+                    categoryMap.get(spu.getCid1()), categoryMap.get(spu.getCid2()), categoryMap.get(spu.getCid3())));
+            spuIndexbo.setParams(paramMap.getOrDefault(spu.getCid3(), Collections.emptyList()));
+            return spuIndexbo;
+        }).collect(Collectors.toList());
+    }
 }
 
 
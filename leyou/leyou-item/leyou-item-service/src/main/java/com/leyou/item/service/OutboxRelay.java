@@ -0,0 +1,165 @@
+package com.leyou.item.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leyou.item.mapper.OutboxMapper;
+import com.leyou.item.pojo.Outbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 把发件箱中的消息批量投递到rabbitmq：等待publisher confirm后再标记为已投递，失败时退避重试。
+ * 投递成功但标记失败时消息会被再次投递，消费者需要保证幂等
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private OutboxMapper outboxMapper;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${leyou.item.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${leyou.item.outbox.confirm-timeout-millis:5000}")
+    private long confirmTimeoutMillis;
+
+    @Value("${leyou.item.outbox.max-backoff-millis:30000}")
+    private long maxBackoffMillis;
+
+    @Value("${leyou.item.outbox.retention-days:7}")
+    private int retentionDays;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 最早一条未投递消息已经等待的时间
+     */
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    private Counter sent;
+
+    private Counter failed;
+
+    /**
+     * 连续失败的次数和下一次允许投递的时间，只在调度线程中访问
+     */
+    private int failures;
+
+    private long nextAttemptAt;
+
+    @PostConstruct
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+        Gauge.builder("leyou.item.outbox.lag", this.lagMillis, lag -> lag.get() / 1000.0)
+                .description("age of the oldest unsent outbox message")
+                .baseUnit("seconds")
+                .register(this.meterRegistry);
+        this.sent = this.meterRegistry.counter("leyou.item.outbox.sent");
+        this.failed = this.meterRegistry.counter("leyou.item.outbox.failed");
+    }
+
+    @Scheduled(fixedDelayString = "${leyou.item.outbox.poll-millis:200}")
+    public void relay() {
+        if (System.currentTimeMillis() < this.nextAttemptAt) {
+            return;
+        }
+        //一批满了说明还有积压，继续投递
+        Integer count;
+        do {
+            count = this.transactionTemplate.execute(status -> this.relayBatch());
+        } while (count != null && count == this.batchSize);
+    }
+
+    private int relayBatch() {
+        List<Outbox> batch = this.outboxMapper.selectPendingForUpdate(this.batchSize);
+        this.lagMillis.set(batch.isEmpty() ? 0 : System.currentTimeMillis() - batch.get(0).getCreatedTime().getTime());
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = batch.stream().map(Outbox::getId).collect(Collectors.toList());
+        try {
+            this.rabbitTemplate.invoke(operations -> {
+                for (Outbox outbox : batch) {
+                    Map<String, String> headers = this.readHeaders(outbox);
+                    operations.convertAndSend(outbox.getRoutingKey(), (Object) outbox.getPayload(), message -> {
+                        headers.forEach(message.getMessageProperties()::setHeader);
+                        return message;
+                    });
+                }
+                operations.waitForConfirmsOrDie(this.confirmTimeoutMillis);
+                return null;
+            });
+        } catch (AmqpException e) {
+            this.outboxMapper.incrementAttempts(ids);
+            this.failed.increment(batch.size());
+            this.failures++;
+            long backoff = Math.min(this.maxBackoffMillis, 100L << Math.min(this.failures, 20));
+            this.nextAttemptAt = System.currentTimeMillis() + backoff;
+            LOGGER.warn("failed to relay {} outbox messages from id {}, retry in {} ms", batch.size(), ids.get(0), backoff, e);
+            return 0;
+        }
+        this.outboxMapper.markSent(ids, new Date());
+        this.sent.increment(batch.size());
+        this.failures = 0;
+        return batch.size();
+    }
+
+    private Map<String, String> readHeaders(Outbox outbox) {
+        if (outbox.getHeaders() == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            return MAPPER.readValue(outbox.getHeaders(), new TypeReference<Map<String, String>>() {});
+        } catch (IOException e) {
+            //消息头损坏时仍然投递消息体，消费者按没有消息头处理
+            LOGGER.warn("invalid headers of outbox message {}", outbox.getId(), e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 每天清理已经投递的旧消息
+     */
+    @Scheduled(cron = "${leyou.item.outbox.cleanup-cron:0 0 3 * * ?}")
+    public void cleanup() {
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(this.retentionDays));
+        int deleted;
+        do {
+            deleted = this.outboxMapper.deleteSentBefore(before, 1000);
+        } while (deleted == 1000);
+    }
+}
@@ -0,0 +1,83 @@
+package com.leyou.item.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leyou.item.mapper.OutboxMapper;
+import com.leyou.item.pojo.Outbox;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class OutboxService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private OutboxMapper outboxMapper;
+
+    /**
+     * 把消息写入发件箱，必须在业务事务中调用，事务提交后由OutboxRelay投递
+     * @param routingKey
+     * @param payload
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(String routingKey, Long payload) {
+        this.add(routingKey, payload, Collections.emptyMap());
+    }
+
+    /**
+     * 把带消息头的消息写入发件箱，必须在业务事务中调用
+     * @param routingKey
+     * @param payload
+     * @param headers
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(String routingKey, Long payload, Map<String, String> headers) {
+        Outbox outbox = new Outbox();
+        outbox.setRoutingKey(routingKey);
+        outbox.setPayload(payload);
+        if (!headers.isEmpty()) {
+            try {
+                outbox.setHeaders(MAPPER.writeValueAsString(headers));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("invalid message headers " + headers, e);
+            }
+        }
+        outbox.setStatus(0);
+        outbox.setAttempts(0);
+        outbox.setCreatedTime(new Date());
+        this.outboxMapper.insertSelective(outbox);
+    }
+
+    /**
+     * 用一条多行insert把同一类型的多条消息写入发件箱，必须在业务事务中调用
+     * @param routingKey
+     * @param payloads
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void addAll(String routingKey, List<Long> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        Date now = new Date();
+        List<Outbox> messages = new ArrayList<>(payloads.size());
+        for (Long payload : payloads) {
+            Outbox outbox = new Outbox();
+            outbox.setRoutingKey(routingKey);
+            outbox.setPayload(payload);
+            outbox.setStatus(0);
+            outbox.setAttempts(0);
+            outbox.setCreatedTime(now);
+            messages.add(outbox);
+        }
+        this.outboxMapper.insertOutboxes(messages);
+    }
+}
@@ -1,13 +1,20 @@
 package com.leyou.item.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.leyou.item.mapper.SpecGroupMapper;
 import com.leyou.item.mapper.SpecParamMapper;
 import com.leyou.item.pojo.SpecGroup;
 import com.leyou.item.pojo.SpecParam;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tk.mybatis.mapper.entity.Example;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class SpecificationService {
@@ -16,6 +23,15 @@ public class SpecificationService {
     @Autowired
     private SpecParamMapper paramMapper;
 
+    /**
+     * 分类id到组装好的参数组，商品详情页每次渲染都会读取。
+     * 通过本服务修改规格时立即失效，其他途径的修改依靠过期时间兜底
+     */
+    private final Cache<Long, List<SpecGroup>> groupsWithParam = Caffeine.newBuilder()
+            .maximumSize(5000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
     /**
      * 根据分类id查询参数组
      * @param cid
@@ -41,19 +57,127 @@ public class SpecificationService {
         return this.paramMapper.select(record);
     }
 
+    /**
+     * 根据多个分类id批量查询规格参数
+     * @param cids
+     * @param searching
+     * @return
+     */
+    public List<SpecParam> queryParamsByCids(List<Long> cids, Boolean searching) {
+        Example example = new Example(SpecParam.class);
+        Example.Criteria criteria = example.createCriteria();
+        criteria.andIn("cid", cids);
+        if (searching != null) {
+            criteria.andEqualTo("searching", searching);
+        }
+        return this.paramMapper.selectByExample(example);
+    }
+
+    /**
+     * 查询分类下的参数组及组内参数，参数一次查出后在内存中按组分配，结果会被缓存，调用方不能修改
+     * @param cid
+     * @return
+     */
     public List<SpecGroup> queryGroupsWithParam(Long cid) {
+        return this.groupsWithParam.get(cid, this::loadGroupsWithParam);
+    }
+
+    private List<SpecGroup> loadGroupsWithParam(Long cid) {
         List<SpecGroup> groups = this.queryGroupsByCid(cid);
-        groups.forEach(group->{
-            List<SpecParam> params = this.queryParams(group.getId(), null, null, null);
-            group.setParams(params);
-        });
-        return groups;
+        Map<Long, List<SpecParam>> paramsByGroup = new HashMap<>();
+        this.queryParams(null, cid, null, null).forEach(param ->
+                paramsByGroup.computeIfAbsent(param.getGroupId(), gid -> new ArrayList<>()).add(param));
+        groups.forEach(group ->
+                group.setParams(Collections.unmodifiableList(paramsByGroup.getOrDefault(group.getId(), new ArrayList<>()))));
+        return Collections.unmodifiableList(groups);
+    }
+
+    @Transactional
+    public void saveGroup(SpecGroup group) {
+        this.groupMapper.insertSelective(group);
+        this.evictAfterCommit(group.getCid());
+    }
+
+    @Transactional
+    public void updateGroup(SpecGroup group) {
+        SpecGroup old = this.groupMapper.selectByPrimaryKey(group.getId());
+        this.groupMapper.updateByPrimaryKeySelective(group);
+        this.evictAfterUpdate(old == null ? null : old.getCid(), group.getCid());
     }
-}
 
+    /**
+     * 删除参数组，组内的参数一起删除
+     * @param id
+     */
+    @Transactional
+    public void deleteGroup(Long id) {
+        SpecGroup group = this.groupMapper.selectByPrimaryKey(id);
+        if (group == null) {
+            return;
+        }
+        SpecParam record = new SpecParam();
+        record.setGroupId(id);
+        this.paramMapper.delete(record);
+        this.groupMapper.deleteByPrimaryKey(id);
+        this.evictAfterCommit(group.getCid());
+    }
 
+    @Transactional
+    public void saveParam(SpecParam param) {
+        this.paramMapper.insertSelective(param);
+        this.evictAfterCommit(param.getCid());
+    }
 
+    @Transactional
+    public void updateParam(SpecParam param) {
+        SpecParam old = this.paramMapper.selectByPrimaryKey(param.getId());
+        this.paramMapper.updateByPrimaryKeySelective(param);
+        this.evictAfterUpdate(old == null ? null : old.getCid(), param.getCid());
+    }
 
+    @Transactional
+    public void deleteParam(Long id) {
+        SpecParam param = this.paramMapper.selectByPrimaryKey(id);
+        if (param == null) {
+            return;
+        }
+        this.paramMapper.deleteByPrimaryKey(id);
+        this.evictAfterCommit(param.getCid());
+    }
 
+    /**
+     * 使分类的参数组缓存失效
+     * @param cid 为null时清空所有分类
+     */
+    public void evictGroupsWithParam(Long cid) {
+        if (cid == null) {
+            this.groupsWithParam.invalidateAll();
+        } else {
+            this.groupsWithParam.invalidate(cid);
+        }
+    }
 
+    /**
+     * 修改时分类可能变化，原分类和新分类的缓存都要失效，新分类为null表示没有修改分类
+     */
+    private void evictAfterUpdate(Long oldCid, Long newCid) {
+        if (oldCid != null) {
+            this.evictAfterCommit(oldCid);
+        }
+        if (newCid != null && !newCid.equals(oldCid)) {
+            this.evictAfterCommit(newCid);
+        }
+    }
 
+    /**
+     * 事务提交后再失效缓存，避免提交前被并发请求用旧数据重新加载
+     */
+    private void evictAfterCommit(Long cid) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                evictGroupsWithParam(cid);
+            }
+        });
+    }
+}
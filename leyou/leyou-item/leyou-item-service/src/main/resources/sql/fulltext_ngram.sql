@@ -0,0 +1,4 @@
+-- 后台按商品标题、品牌名称搜索使用的全文索引，ngram分词器按ngram_token_size（默认2）切分中文
+-- 少于ngram_token_size个字的关键字无法使用全文索引，仍然按like查询
+ALTER TABLE `tb_spu` ADD FULLTEXT INDEX `ft_title` (`title`) WITH PARSER ngram;
+ALTER TABLE `tb_brand` ADD FULLTEXT INDEX `ft_name` (`name`) WITH PARSER ngram;
@@ -0,0 +1,17 @@
+-- 商品修改消息的发件箱，和业务数据在同一个事务中写入，由OutboxRelay异步投递到rabbitmq
+CREATE TABLE `tb_outbox` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `routing_key` varchar(64) NOT NULL COMMENT '消息的routingKey，例如item.update',
+  `payload` bigint(20) NOT NULL COMMENT '消息体，spuId或brandId',
+  `headers` text DEFAULT NULL COMMENT '消息头，json格式',
+  `status` tinyint(1) NOT NULL DEFAULT '0' COMMENT '0未投递，1已投递',
+  `attempts` int(11) NOT NULL DEFAULT '0' COMMENT '投递失败的次数',
+  `created_time` datetime NOT NULL,
+  `sent_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_status_id` (`status`,`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+
+-- 已经建好的表把消息头改为text，修改大量sku时消息头不会超长
+-- ALTER TABLE `tb_outbox` MODIFY `headers` text DEFAULT NULL COMMENT '消息头，json格式';
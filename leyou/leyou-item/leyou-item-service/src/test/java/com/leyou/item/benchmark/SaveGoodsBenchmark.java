@@ -0,0 +1,66 @@
+package com.leyou.item.benchmark;
+
+import com.leyou.item.bo.Spubo;
+import com.leyou.item.service.GoodsService;
+import com.leyou.item.test.GoodsTestData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 新增商品的耗时随sku数量的变化，需要连接数据库，每次新增都在事务中执行并回滚。
+ * 直接运行main方法，结果中有p50、p99
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveGoodsBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    private int skuCount;
+
+    private ConfigurableApplicationContext context;
+
+    private GoodsService goodsService;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Setup
+    public void setup() {
+        this.context = BenchmarkContext.start();
+        this.goodsService = this.context.getBean(GoodsService.class);
+        this.transactionTemplate = this.context.getBean(TransactionTemplate.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.context.close();
+    }
+
+    @Benchmark
+    public Long saveGoods() {
+        //sku的id会回填到对象中，每次使用新的数据
+        Spubo spubo = GoodsTestData.newSpubo(this.skuCount);
+        return this.transactionTemplate.execute(status -> {
+            this.goodsService.saveGoods(spubo);
+            status.setRollbackOnly();
+            return spubo.getId();
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SaveGoodsBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,114 @@
+package com.leyou.item.benchmark;
+
+import com.leyou.item.bo.Spubo;
+import com.leyou.item.mapper.SkuMapper;
+import com.leyou.item.mapper.SpuMapper;
+import com.leyou.item.mapper.StockMapper;
+import com.leyou.item.pojo.Sku;
+import com.leyou.item.pojo.Stock;
+import com.leyou.item.test.GoodsTestData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 对比查询spu下所有sku和库存的两种方式：一次关联查询，以及原来逐个sku查询库存。
+ * 需要连接数据库，测试数据直接通过mapper写入，不发送商品消息，结束后删除。直接运行main方法，结果中有p50、p99
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SkuStockQueryBenchmark {
+
+    @Param({"20", "500"})
+    private int skuCount;
+
+    private ConfigurableApplicationContext context;
+
+    private SpuMapper spuMapper;
+
+    private SkuMapper skuMapper;
+
+    private StockMapper stockMapper;
+
+    private Long spuId;
+
+    private List<Long> skuIds;
+
+    @Setup
+    public void setup() {
+        this.context = BenchmarkContext.start();
+        this.spuMapper = this.context.getBean(SpuMapper.class);
+        this.skuMapper = this.context.getBean(SkuMapper.class);
+        this.stockMapper = this.context.getBean(StockMapper.class);
+
+        Spubo spubo = GoodsTestData.newSpubo(this.skuCount);
+        this.context.getBean(TransactionTemplate.class).execute(status -> {
+            //下架并逻辑删除，不会出现在商品列表中
+            spubo.setSaleable(false);
+            spubo.setValid(false);
+            spubo.setCreateTime(new Date());
+            spubo.setLastUpdateTime(spubo.getCreateTime());
+            this.spuMapper.insertSelective(spubo);
+            spubo.getSkus().forEach(sku -> {
+                sku.setSpuId(spubo.getId());
+                sku.setCreateTime(spubo.getCreateTime());
+                sku.setLastUpdateTime(spubo.getCreateTime());
+            });
+            this.skuMapper.insertSkus(spubo.getSkus());
+            this.stockMapper.insertStocks(spubo.getSkus().stream().map(sku -> {
+                Stock stock = new Stock();
+                stock.setSkuId(sku.getId());
+                stock.setStock(sku.getStock());
+                return stock;
+            }).collect(Collectors.toList()));
+            return null;
+        });
+        this.spuId = spubo.getId();
+        this.skuIds = spubo.getSkus().stream().map(Sku::getId).collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.context.getBean(TransactionTemplate.class).execute(status -> {
+            this.stockMapper.deleteByIdList(this.skuIds);
+            this.skuMapper.deleteByIdList(this.skuIds);
+            this.spuMapper.deleteByPrimaryKey(this.spuId);
+            return null;
+        });
+        this.context.close();
+    }
+
+    @Benchmark
+    public List<Sku> joined() {
+        return this.skuMapper.selectWithStockBySpuId(this.spuId);
+    }
+
+    @Benchmark
+    public List<Sku> perSku() {
+        Sku record = new Sku();
+        record.setSpuId(this.spuId);
+        List<Sku> skus = this.skuMapper.select(record);
+        skus.forEach(sku -> sku.setStock(this.stockMapper.selectByPrimaryKey(sku.getId()).getStock()));
+        return skus;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SkuStockQueryBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
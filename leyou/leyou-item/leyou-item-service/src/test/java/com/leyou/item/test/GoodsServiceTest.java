@@ -0,0 +1,229 @@
+package com.leyou.item.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leyou.item.bo.Spubo;
+import com.leyou.item.mapper.OutboxMapper;
+import com.leyou.item.mapper.SkuMapper;
+import com.leyou.item.mapper.StockMapper;
+import com.leyou.item.pojo.Outbox;
+import com.leyou.item.pojo.Sku;
+import com.leyou.item.pojo.Stock;
+import com.leyou.item.service.GoodsService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * 需要连接数据库，所有写入都在事务中执行并回滚
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class GoodsServiceTest {
+
+    @Autowired
+    private GoodsService goodsService;
+
+    @Autowired
+    private SkuMapper skuMapper;
+
+    @Autowired
+    private StockMapper stockMapper;
+
+    @Autowired
+    private OutboxMapper outboxMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * 多行insert分批写入，每个sku都回填了id，并且有对应的库存
+     */
+    @Test
+    public void saveGoodsInsertsSkusAndStock() {
+        //超过一批的数量，覆盖分批写入
+        int skuCount = 501;
+        this.transactionTemplate.execute(status -> {
+            Spubo spubo = GoodsTestData.newSpubo(skuCount);
+            this.goodsService.saveGoods(spubo);
+
+            Sku record = new Sku();
+            record.setSpuId(spubo.getId());
+            assertEquals(skuCount, this.skuMapper.selectCount(record));
+            List<Long> skuIds = spubo.getSkus().stream().map(Sku::getId).collect(Collectors.toList());
+            assertFalse(skuIds.contains(null));
+            Map<Long, Integer> stocks = this.stockMapper.selectByIdList(skuIds).stream()
+                    .collect(Collectors.toMap(Stock::getSkuId, Stock::getStock));
+            assertEquals(skuCount, stocks.size());
+            spubo.getSkus().forEach(sku -> assertEquals(sku.getStock(), stocks.get(sku.getId())));
+
+            status.setRollbackOnly();
+            return null;
+        });
+    }
+
+    /**
+     * 关联查询返回的sku和库存与逐个查询库存的结果相同
+     */
+    @Test
+    public void querySkusJoinMatchesPerSkuStock() {
+        this.transactionTemplate.execute(status -> {
+            Spubo spubo = GoodsTestData.newSpubo(20);
+            this.goodsService.saveGoods(spubo);
+
+            List<Sku> joined = this.goodsService.querySkusBySpuId(spubo.getId());
+            Sku record = new Sku();
+            record.setSpuId(spubo.getId());
+            List<Sku> expected = this.skuMapper.select(record);
+            expected.forEach(sku -> sku.setStock(this.stockMapper.selectByPrimaryKey(sku.getId()).getStock()));
+
+            assertEquals(20, joined.size());
+            assertEquals(stocksById(expected), stocksById(joined));
+            assertEquals(stocksById(expected), stocksById(this.goodsService.querySkusBySpuIds(Collections.singletonList(spubo.getId()))));
+
+            status.setRollbackOnly();
+            return null;
+        });
+    }
+
+    /**
+     * 按indexes对应已有的sku：未变化的不更新，id保持不变，库存有变化的写入，没有提交的删除，新的indexes新增
+     */
+    @Test
+    public void updateGoodsMatchesSkusByIndexes() {
+        this.transactionTemplate.execute(status -> {
+            Spubo spubo = GoodsTestData.newSpubo(5);
+            spubo.getSkus().get(4).setImage("4.jpg");
+            this.goodsService.saveGoods(spubo);
+            Map<String, Long> oldIds = idsByIndexes(spubo.getSkus());
+
+            Spubo update = this.newUpdate(spubo);
+            List<Sku> skus = new ArrayList<>();
+            //0不变，1改价格，2改库存，3删除，4清空图片和特有规格，5新增
+            skus.add(GoodsTestData.newSku(0));
+            Sku price = GoodsTestData.newSku(1);
+            price.setPrice(999L);
+            skus.add(price);
+            Sku stock = GoodsTestData.newSku(2);
+            stock.setStock(999);
+            skus.add(stock);
+            Sku cleared = GoodsTestData.newSku(4);
+            cleared.setImage(null);
+            cleared.setOwnSpec(null);
+            skus.add(cleared);
+            skus.add(GoodsTestData.newSku(5));
+            update.setSkus(skus);
+            this.goodsService.updateGoods(update);
+
+            Map<String, Sku> saved = new HashMap<>();
+            this.goodsService.querySkusBySpuId(spubo.getId()).forEach(sku -> saved.put(sku.getIndexes(), sku));
+            assertEquals(new HashSet<>(Arrays.asList("0", "1", "2", "4", "5")), saved.keySet());
+            for (String indexes : Arrays.asList("0", "1", "2", "4")) {
+                assertEquals(oldIds.get(indexes), saved.get(indexes).getId());
+            }
+            assertEquals(Long.valueOf(999L), saved.get("1").getPrice());
+            assertEquals(Integer.valueOf(999), saved.get("2").getStock());
+            assertEquals("", saved.get("4").getImage());
+            assertNull(saved.get("4").getOwnSpec());
+            assertEquals(Integer.valueOf(15), saved.get("5").getStock());
+            assertNull(this.stockMapper.selectByPrimaryKey(oldIds.get("3")));
+
+            Map<String, String> headers = this.updateHeaders(spubo.getId());
+            assertEquals(new HashSet<>(Arrays.asList(saved.get("1").getId(), saved.get("2").getId(), saved.get("4").getId(), saved.get("5").getId())),
+                    parseIds(headers.get(GoodsService.HEADER_CHANGED_SKU_IDS)));
+            assertEquals(Collections.singleton(oldIds.get("3")), parseIds(headers.get(GoodsService.HEADER_DELETED_SKU_IDS)));
+
+            status.setRollbackOnly();
+            return null;
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void updateGoodsRejectsDuplicateIndexes() {
+        //异常抛出后事务回滚
+        this.transactionTemplate.execute(status -> {
+            Spubo spubo = GoodsTestData.newSpubo(2);
+            this.goodsService.saveGoods(spubo);
+
+            Spubo update = this.newUpdate(spubo);
+            update.setSkus(Arrays.asList(GoodsTestData.newSku(0), GoodsTestData.newSku(0)));
+            this.goodsService.updateGoods(update);
+            return null;
+        });
+    }
+
+    /**
+     * 变化的sku太多时消息头只标记整个spu
+     */
+    @Test
+    public void updateGoodsMarksFullSpuWhenManySkusChange() {
+        this.transactionTemplate.execute(status -> {
+            Spubo spubo = GoodsTestData.newSpubo(250);
+            this.goodsService.saveGoods(spubo);
+
+            Spubo update = this.newUpdate(spubo);
+            List<Sku> skus = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                Sku sku = GoodsTestData.newSku(i);
+                sku.setPrice(1L);
+                skus.add(sku);
+            }
+            update.setSkus(skus);
+            this.goodsService.updateGoods(update);
+
+            Map<String, String> headers = this.updateHeaders(spubo.getId());
+            assertEquals("true", headers.get(GoodsService.HEADER_FULL_SPU));
+            assertFalse(headers.containsKey(GoodsService.HEADER_CHANGED_SKU_IDS));
+
+            status.setRollbackOnly();
+            return null;
+        });
+    }
+
+    private Spubo newUpdate(Spubo saved) {
+        Spubo update = GoodsTestData.newSpubo(0);
+        update.setId(saved.getId());
+        update.getSpuDetail().setSpuId(saved.getId());
+        return update;
+    }
+
+    /**
+     * 更新商品时写入发件箱的消息头
+     */
+    private Map<String, String> updateHeaders(Long spuId) {
+        Outbox record = new Outbox();
+        record.setRoutingKey("item.update");
+        record.setPayload(spuId);
+        List<Outbox> messages = this.outboxMapper.select(record);
+        assertEquals(1, messages.size());
+        try {
+            return MAPPER.readValue(messages.get(0).getHeaders(), new TypeReference<Map<String, String>>() {
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Set<Long> parseIds(String ids) {
+        return Arrays.stream(ids.split(",")).filter(id -> !id.isEmpty()).map(Long::valueOf).collect(Collectors.toSet());
+    }
+
+    private static Map<String, Long> idsByIndexes(List<Sku> skus) {
+        return skus.stream().collect(Collectors.toMap(Sku::getIndexes, Sku::getId));
+    }
+
+    private static Map<Long, Integer> stocksById(List<Sku> skus) {
+        return skus.stream().collect(Collectors.toMap(Sku::getId, Sku::getStock));
+    }
+}
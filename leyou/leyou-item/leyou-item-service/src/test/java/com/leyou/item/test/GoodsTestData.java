@@ -0,0 +1,57 @@
+package com.leyou.item.test;
+
+import com.leyou.item.bo.Spubo;
+import com.leyou.item.pojo.Sku;
+import com.leyou.item.pojo.SpuDetail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试和基准测试用的商品数据，不依赖数据库中已有的商品
+ */
+public final class GoodsTestData {
+
+    private GoodsTestData() {
+    }
+
+    /**
+     * 新的spu，sku的indexes依次为0到skuCount-1
+     * @param skuCount
+     * @return
+     */
+    public static Spubo newSpubo(int skuCount) {
+        Spubo spubo = new Spubo();
+        spubo.setTitle("test goods");
+        spubo.setSubTitle("");
+        spubo.setBrandId(1L);
+        spubo.setCid1(1L);
+        spubo.setCid2(2L);
+        spubo.setCid3(3L);
+        SpuDetail spuDetail = new SpuDetail();
+        spuDetail.setDescription("");
+        spuDetail.setGenericSpec("{}");
+        spuDetail.setSpecialSpec("{}");
+        spuDetail.setPackingList("");
+        spuDetail.setAfterService("");
+        spubo.setSpuDetail(spuDetail);
+        List<Sku> skus = new ArrayList<>(skuCount);
+        for (int i = 0; i < skuCount; i++) {
+            skus.add(newSku(i));
+        }
+        spubo.setSkus(skus);
+        return spubo;
+    }
+
+    public static Sku newSku(int index) {
+        Sku sku = new Sku();
+        sku.setTitle("test goods " + index);
+        sku.setImage("");
+        sku.setPrice(100L + index);
+        sku.setOwnSpec("{}");
+        sku.setIndexes(String.valueOf(index));
+        sku.setEnable(true);
+        sku.setStock(10 + index);
+        return sku;
+    }
+}
@@ -0,0 +1,71 @@
+package com.leyou.search.config;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RabbitConfig {
+
+    /**
+     * 商品修改消息的死信交换机，重新投递后仍然同步失败的消息转入死信队列，等待排查后重新投递
+     */
+    public static final String DEAD_LETTER_EXCHANGE = "leyou.search.dlx";
+
+    public static final String DEAD_LETTER_SAVE_KEY = "search.save";
+
+    public static final String DEAD_LETTER_DELETE_KEY = "search.delete";
+
+    @Bean
+    public DirectExchange searchDeadLetterExchange() {
+        return new DirectExchange(DEAD_LETTER_EXCHANGE, true, false);
+    }
+
+    @Bean
+    public Queue searchSaveDeadLetterQueue() {
+        return new Queue("leyou.search.save.dlq", true);
+    }
+
+    @Bean
+    public Queue searchDeleteDeadLetterQueue() {
+        return new Queue("leyou.search.delete.dlq", true);
+    }
+
+    @Bean
+    public Binding searchSaveDeadLetterBinding() {
+        return BindingBuilder.bind(searchSaveDeadLetterQueue()).to(searchDeadLetterExchange()).with(DEAD_LETTER_SAVE_KEY);
+    }
+
+    @Bean
+    public Binding searchDeleteDeadLetterBinding() {
+        return BindingBuilder.bind(searchDeleteDeadLetterQueue()).to(searchDeadLetterExchange()).with(DEAD_LETTER_DELETE_KEY);
+    }
+
+    /**
+     * 批量消费商品修改消息的容器：手动确认，预取数量限制了每个消费者未确认消息的上限
+     * @param configurer
+     * @param connectionFactory
+     * @param prefetch
+     * @return
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                      ConnectionFactory connectionFactory,
+                                                                      @Value("${leyou.search.listener.prefetch:250}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(prefetch);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        return factory;
+    }
+}
@@ -0,0 +1,85 @@
+package com.leyou.search.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 全量重建索引的配置
+ */
+@Component
+@ConfigurationProperties(prefix = "leyou.search.reindex")
+public class ReindexProperties {
+
+    private Integer pageSize = 200;// 每次从item-service拉取的spu数量
+    private Integer threads = 4;// 构建文档的线程数
+    private Integer maxPendingPages = 8;// 已提交但还未写入es的页数上限
+    private Integer bulkActions = 1000;// 每个bulk请求的最大文档数
+    private Long bulkBytes = 5L * 1024 * 1024;// 每个bulk请求的最大字节数
+    private String checkpointFile = "reindex.checkpoint";// 断点文件，记录已写入的最后一个spuId
+    private Integer replicas = 1;// 重建完成后恢复的副本数
+    private String refreshInterval = "1s";// 重建完成后恢复的刷新间隔
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Integer getMaxPendingPages() {
+        return maxPendingPages;
+    }
+
+    public void setMaxPendingPages(Integer maxPendingPages) {
+        this.maxPendingPages = maxPendingPages;
+    }
+
+    public Integer getBulkActions() {
+        return bulkActions;
+    }
+
+    public void setBulkActions(Integer bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public Long getBulkBytes() {
+        return bulkBytes;
+    }
+
+    public void setBulkBytes(Long bulkBytes) {
+        this.bulkBytes = bulkBytes;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public Integer getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(Integer replicas) {
+        this.replicas = replicas;
+    }
+
+    public String getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setRefreshInterval(String refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+}
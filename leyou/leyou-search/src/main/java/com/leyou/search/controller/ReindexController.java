@@ -0,0 +1,43 @@
+package com.leyou.search.controller;
+
+import com.leyou.search.pojo.ReindexProgress;
+import com.leyou.search.service.ReindexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+@Controller
+@RequestMapping("reindex")
+public class ReindexController {
+
+    @Autowired
+    private ReindexService reindexService;
+
+    /**
+     * 开始全量重建索引，默认从上次的断点继续
+     * @param restart
+     * @return
+     */
+    @PostMapping
+    public ResponseEntity<ReindexProgress> start(@RequestParam(value = "restart",defaultValue = "false")Boolean restart){
+        if(!this.reindexService.start(restart)){
+            //409: 已经有重建在执行
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(this.reindexService.getProgress());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(this.reindexService.getProgress());
+    }
+
+    /**
+     * 查询重建进度和吞吐
+     * @return
+     */
+    @GetMapping
+    public ResponseEntity<ReindexProgress> progress(){
+        return ResponseEntity.ok(this.reindexService.getProgress());
+    }
+}
@@ -0,0 +1,32 @@
+package com.leyou.search.listener;
+
+import com.leyou.search.service.BrandCategoryCache;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 品牌修改时失效本地缓存。每个实例使用自己的匿名队列，保证所有实例都能收到消息。
+ * 分类没有修改接口，也不会发送消息，分类名称的缓存依靠定时刷新和过期更新
+ */
+@Component
+public class CacheListener {
+    @Autowired
+    private BrandCategoryCache brandCategoryCache;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = "leyou.item.exchange",ignoreDeclarationExceptions = "true",type = ExchangeTypes.TOPIC),
+            key = {"brand.#"}
+    ))
+    public void brandChanged(Long id) {
+        if(id == null){
+            return;
+        }
+        this.brandCategoryCache.invalidateBrand(id);
+    }
+}
@@ -1,42 +1,202 @@
 package com.leyou.search.listener;
 
+import com.leyou.search.config.RabbitConfig;
 import com.leyou.search.service.SearchService;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Argument;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 批量消费商品修改消息：消息先放入缓冲区，达到数量上限或者时间窗口结束时合并成一次bulk请求，
+ * 同一个spuId只处理一次，删除优先于新增和修改，处理完成后逐条确认。
+ * bulk请求只在flusher线程上执行，保证批次之间的顺序，也不会阻塞消费线程；
+ * 批次失败时二分重试，只有单独处理仍然失败的spuId被退回队列，重新投递后仍然失败才进入死信队列
+ */
 @Component
 public class GoodsListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GoodsListener.class);
+
     @Autowired
     private SearchService searchService;
 
+    @Value("${leyou.search.listener.batch-size:100}")
+    private int batchSize;
+
+    @Value("${leyou.search.listener.window-millis:500}")
+    private long windowMillis;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "goods-listener-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * spuId到待处理的操作，保持消息到达的顺序
+     */
+    private Map<Long, Pending> pending = new LinkedHashMap<>();
+
+    /**
+     * 没有spuId的消息，直接确认
+     */
+    private List<Delivery> empty = new ArrayList<>();
+
+    private int messages;
+
+    @PostConstruct
+    public void init() {
+        this.flusher.scheduleWithFixedDelay(this::flush, this.windowMillis, this.windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        //未确认的消息会由broker重新投递
+        this.flusher.shutdownNow();
+    }
+
     @RabbitListener(bindings = @QueueBinding(
-            value = @Queue(value = "leyou.search.save.queue",durable = "true"),
+            value = @Queue(value = "leyou.search.save.queue",durable = "true",arguments = {
+                    @Argument(name = "x-dead-letter-exchange", value = RabbitConfig.DEAD_LETTER_EXCHANGE),
+                    @Argument(name = "x-dead-letter-routing-key", value = RabbitConfig.DEAD_LETTER_SAVE_KEY)}),
             exchange = @Exchange(value = "leyou.item.exchange",ignoreDeclarationExceptions = "true",type = ExchangeTypes.TOPIC),
             key = {"item.insert","item.update"}
-    ))
-    public void save(Long id) throws IOException {
-        if(id == null){
-            return;
-        }
-        this.searchService.save(id);
+    ), containerFactory = "batchContainerFactory")
+    public void save(Long id, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long tag,
+                     @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        this.add(id, false, channel, tag, redelivered);
     }
 
     @RabbitListener(bindings = @QueueBinding(
-            value = @Queue(value = "leyou.search.delete.queue",durable = "true"),
+            value = @Queue(value = "leyou.search.delete.queue",durable = "true",arguments = {
+                    @Argument(name = "x-dead-letter-exchange", value = RabbitConfig.DEAD_LETTER_EXCHANGE),
+                    @Argument(name = "x-dead-letter-routing-key", value = RabbitConfig.DEAD_LETTER_DELETE_KEY)}),
             exchange = @Exchange(value = "leyou.item.exchange",ignoreDeclarationExceptions = "true",type = ExchangeTypes.TOPIC),
             key = {"item.delete"}
-    ))
-    public void delete(Long id) throws IOException {
-        if(id == null){
+    ), containerFactory = "batchContainerFactory")
+    public void delete(Long id, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long tag,
+                       @Header(AmqpHeaders.REDELIVERED) boolean redelivered) {
+        this.add(id, true, channel, tag, redelivered);
+    }
+
+    private void add(Long id, boolean delete, Channel channel, long tag, boolean redelivered) {
+        Delivery delivery = new Delivery(channel, tag, redelivered);
+        boolean full;
+        synchronized (this) {
+            if (id == null) {
+                this.empty.add(delivery);
+            } else {
+                Pending op = this.pending.computeIfAbsent(id, key -> new Pending());
+                //删除优先，已经删除的spu不会再被修改
+                op.delete |= delete;
+                op.deliveries.add(delivery);
+            }
+            full = ++this.messages >= this.batchSize;
+        }
+        if (full) {
+            //交给flusher线程执行，消费线程不等待bulk请求
+            this.flusher.execute(this::flush);
+        }
+    }
+
+    /**
+     * 取出缓冲区中的消息，合并成一次bulk请求。只在flusher线程上调用，锁只在交换缓冲区时持有
+     */
+    private void flush() {
+        Map<Long, Pending> batch;
+        List<Delivery> skipped;
+        synchronized (this) {
+            if (this.messages == 0) {
+                return;
+            }
+            batch = this.pending;
+            skipped = this.empty;
+            this.pending = new LinkedHashMap<>();
+            this.empty = new ArrayList<>();
+            this.messages = 0;
+        }
+        skipped.forEach(delivery -> this.settle(delivery, true, false));
+        if (!batch.isEmpty()) {
+            this.sync(new ArrayList<>(batch.entrySet()));
+        }
+    }
+
+    /**
+     * 同步一组spu，成功后确认它们的消息；失败时分成两半分别重试，
+     * 单独同步仍然失败的spu第一次退回队列，已经重新投递过的转入死信队列，不影响同一批次中的其他spu
+     * @param batch
+     */
+    private void sync(List<Map.Entry<Long, Pending>> batch) {
+        List<Long> saveIds = new ArrayList<>();
+        List<Long> deleteIds = new ArrayList<>();
+        batch.forEach(entry -> (entry.getValue().delete ? deleteIds : saveIds).add(entry.getKey()));
+        try {
+            this.searchService.sync(saveIds, deleteIds);
+        } catch (Exception e) {
+            if (batch.size() > 1) {
+                LOGGER.warn("failed to sync {} spu, retrying in halves", batch.size(), e);
+                int middle = batch.size() / 2;
+                this.sync(batch.subList(0, middle));
+                this.sync(batch.subList(middle, batch.size()));
+                return;
+            }
+            Map.Entry<Long, Pending> entry = batch.get(0);
+            LOGGER.error("failed to sync spu {} (delete {})", entry.getKey(), entry.getValue().delete, e);
+            entry.getValue().deliveries.forEach(delivery -> this.settle(delivery, false, !delivery.redelivered));
             return;
         }
-        this.searchService.delete(id);
+        batch.forEach(entry -> entry.getValue().deliveries.forEach(delivery -> this.settle(delivery, true, false)));
+    }
+
+    /**
+     * 逐条确认，同一个channel上成功和失败的消息交错，不能用multiple批量确认
+     */
+    private void settle(Delivery delivery, boolean ack, boolean requeue) {
+        try {
+            if (ack) {
+                delivery.channel.basicAck(delivery.tag, false);
+            } else {
+                delivery.channel.basicNack(delivery.tag, false, requeue);
+            }
+        } catch (IOException e) {
+            //channel已经关闭，broker会重新投递这条消息
+            LOGGER.warn("failed to {} message {}", ack ? "ack" : "nack", delivery.tag, e);
+        }
+    }
+
+    private static final class Pending {
+        private boolean delete;
+        private final List<Delivery> deliveries = new ArrayList<>(1);
+    }
+
+    private static final class Delivery {
+        private final Channel channel;
+        private final long tag;
+        private final boolean redelivered;
+
+        private Delivery(Channel channel, long tag, boolean redelivered) {
+            this.channel = channel;
+            this.tag = tag;
+            this.redelivered = redelivered;
+        }
     }
 }
@@ -0,0 +1,118 @@
+package com.leyou.search.pojo;
+
+import java.util.Date;
+
+/**
+ * 全量重建索引的进度快照
+ */
+public class ReindexProgress {
+
+    private String state;// IDLE、RUNNING、COMPLETED、FAILED
+    private String index;// 正在写入的新版本索引
+    private Long lastSpuId;// 已经写入es的最后一个spuId，即断点
+    private Long docs;// 已写入的文档数
+    private Long bulks;// 已执行的bulk请求数
+    private Long bytes;// 已写入的字节数
+    private Double docsPerSecond;// 平均吞吐
+    private Double avgBulkMillis;// bulk请求平均耗时
+    private Long maxBulkMillis;// bulk请求最大耗时
+    private Date startTime;
+    private Date endTime;
+    private String error;
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public Long getLastSpuId() {
+        return lastSpuId;
+    }
+
+    public void setLastSpuId(Long lastSpuId) {
+        this.lastSpuId = lastSpuId;
+    }
+
+    public Long getDocs() {
+        return docs;
+    }
+
+    public void setDocs(Long docs) {
+        this.docs = docs;
+    }
+
+    public Long getBulks() {
+        return bulks;
+    }
+
+    public void setBulks(Long bulks) {
+        this.bulks = bulks;
+    }
+
+    public Long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(Long bytes) {
+        this.bytes = bytes;
+    }
+
+    public Double getDocsPerSecond() {
+        return docsPerSecond;
+    }
+
+    public void setDocsPerSecond(Double docsPerSecond) {
+        this.docsPerSecond = docsPerSecond;
+    }
+
+    public Double getAvgBulkMillis() {
+        return avgBulkMillis;
+    }
+
+    public void setAvgBulkMillis(Double avgBulkMillis) {
+        this.avgBulkMillis = avgBulkMillis;
+    }
+
+    public Long getMaxBulkMillis() {
+        return maxBulkMillis;
+    }
+
+    public void setMaxBulkMillis(Long maxBulkMillis) {
+        this.maxBulkMillis = maxBulkMillis;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Date endTime) {
+        this.endTime = endTime;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,107 @@
+package com.leyou.search.service;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.leyou.item.pojo.Brand;
+import com.leyou.search.client.BrandClient;
+import com.leyou.search.client.CategoryClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜索聚合结果中品牌和分类的本地缓存：未命中的id合并成一次批量查询，
+ * 过期前在后台异步刷新。品牌收到修改消息时立即失效；
+ * 分类只在数据库中维护，没有修改消息，名称最多延迟refresh-minutes后更新
+ */
+@Component
+public class BrandCategoryCache {
+
+    @Autowired
+    private BrandClient brandClient;
+
+    @Autowired
+    private CategoryClient categoryClient;
+
+    @Value("${leyou.search.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${leyou.search.cache.refresh-minutes:10}")
+    private long refreshMinutes;
+
+    @Value("${leyou.search.cache.expire-minutes:60}")
+    private long expireMinutes;
+
+    private LoadingCache<Long, Brand> brands;
+
+    private LoadingCache<Long, String> categoryNames;
+
+    @PostConstruct
+    public void init() {
+        this.brands = this.newCache(new CacheLoader<Long, Brand>() {
+            @Override
+            public Brand load(Long id) {
+                return loadAll(Collections.singletonList(id)).get(id);
+            }
+
+            @Override
+            public Map<Long, Brand> loadAll(Iterable<? extends Long> ids) {
+                Map<Long, Brand> result = new HashMap<>();
+                brandClient.queryBrandsByIds(toList(ids)).forEach(brand -> result.put(brand.getId(), brand));
+                return result;
+            }
+        });
+        this.categoryNames = this.newCache(new CacheLoader<Long, String>() {
+            @Override
+            public String load(Long id) {
+                return loadAll(Collections.singletonList(id)).get(id);
+            }
+
+            @Override
+            public Map<Long, String> loadAll(Iterable<? extends Long> ids) {
+                return categoryClient.queryNameMapByIds(toList(ids));
+            }
+        });
+    }
+
+    /**
+     * 批量获取品牌，不存在的id不会出现在结果中
+     * @param ids
+     * @return
+     */
+    public Map<Long, Brand> getBrands(Collection<Long> ids) {
+        return this.brands.getAll(ids);
+    }
+
+    /**
+     * 批量获取分类名称，不存在的id不会出现在结果中
+     * @param ids
+     * @return
+     */
+    public Map<Long, String> getCategoryNames(Collection<Long> ids) {
+        return this.categoryNames.getAll(ids);
+    }
+
+    public void invalidateBrand(Long id) {
+        this.brands.invalidate(id);
+    }
+
+    private <V> LoadingCache<Long, V> newCache(CacheLoader<Long, V> loader) {
+        return Caffeine.newBuilder()
+                .maximumSize(this.maximumSize)
+                .refreshAfterWrite(this.refreshMinutes, TimeUnit.MINUTES)
+                .expireAfterWrite(this.expireMinutes, TimeUnit.MINUTES)
+                .build(loader);
+    }
+
+    private static List<Long> toList(Iterable<? extends Long> ids) {
+        List<Long> list = new ArrayList<>();
+        ids.forEach(list::add);
+        return list;
+    }
+}
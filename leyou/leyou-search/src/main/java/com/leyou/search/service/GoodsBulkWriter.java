@@ -0,0 +1,89 @@
+package com.leyou.search.service;
+
+import com.leyou.search.pojo.Goods;
+import org.springframework.data.elasticsearch.core.DefaultEntityMapper;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按文档数和字节数双重限制的bulk写入器，非线程安全，由重建索引的协调线程独占使用
+ */
+public class GoodsBulkWriter {
+
+    /**
+     * 每次bulk请求完成后的回调
+     */
+    public interface BulkListener {
+        void afterBulk(int actions, long bytes, long millis);
+    }
+
+    private static final EntityMapper ENTITY_MAPPER = new DefaultEntityMapper();
+
+    private final ElasticsearchTemplate template;
+    private final String indexName;
+    private final String type;
+    private final int maxActions;
+    private final long maxBytes;
+    private final BulkListener listener;
+
+    private List<IndexQuery> queries = new ArrayList<>();
+    private long bytes;
+
+    public GoodsBulkWriter(ElasticsearchTemplate template, String indexName, String type,
+                           int maxActions, long maxBytes, BulkListener listener) {
+        this.template = template;
+        this.indexName = indexName;
+        this.type = type;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.listener = listener;
+    }
+
+    /**
+     * 添加一个文档，超过限制时先把已缓存的文档写入es
+     * @param goods
+     * @return 本次添加是否触发了一次bulk写入
+     * @throws IOException
+     */
+    public boolean add(Goods goods) throws IOException {
+        String source = ENTITY_MAPPER.mapToString(goods);
+        long size = source.getBytes(StandardCharsets.UTF_8).length;
+        boolean flushed = false;
+        if (!this.queries.isEmpty() && (this.queries.size() + 1 > this.maxActions || this.bytes + size > this.maxBytes)) {
+            this.flush();
+            flushed = true;
+        }
+
+        IndexQuery query = new IndexQuery();
+        query.setId(goods.getId().toString());
+        query.setIndexName(this.indexName);
+        query.setType(this.type);
+        query.setSource(source);
+        this.queries.add(query);
+        this.bytes += size;
+        return flushed;
+    }
+
+    /**
+     * 把缓存的文档写入es
+     */
+    public void flush() {
+        if (this.queries.isEmpty()) {
+            return;
+        }
+        List<IndexQuery> batch = this.queries;
+        long batchBytes = this.bytes;
+        this.queries = new ArrayList<>();
+        this.bytes = 0;
+
+        long start = System.currentTimeMillis();
+        this.template.bulkIndex(batch);
+        this.listener.afterBulk(batch.size(), batchBytes, System.currentTimeMillis() - start);
+    }
+}
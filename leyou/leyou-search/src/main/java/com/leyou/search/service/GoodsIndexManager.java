@@ -0,0 +1,255 @@
+package com.leyou.search.service;
+
+import com.leyou.search.config.ReindexProperties;
+import com.leyou.search.pojo.Goods;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.core.DefaultEntityMapper;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 管理goods的蓝绿索引：goods是指向当前版本索引goods_v{n}的读写别名。
+ * 重建时写入新版本索引，期间的增量修改同时写入新旧两个索引，重建完成后原子切换别名。
+ */
+@Service
+public class GoodsIndexManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GoodsIndexManager.class);
+
+    private static final EntityMapper ENTITY_MAPPER = new DefaultEntityMapper();
+
+    @Autowired
+    private ElasticsearchTemplate template;
+
+    @Autowired
+    private ReindexProperties properties;
+
+    /**
+     * 正在重建的索引，没有重建时为null
+     */
+    private volatile String rebuildIndex;
+
+    /**
+     * 重建期间被增量修改过的spuId，重建结束前需要重新同步一次
+     */
+    private final Set<Long> changedIds = ConcurrentHashMap.newKeySet();
+
+    public String getAlias() {
+        return this.entity().getIndexName();
+    }
+
+    public String getType() {
+        return this.entity().getIndexType();
+    }
+
+    public String getRebuildIndex() {
+        return this.rebuildIndex;
+    }
+
+    public boolean exists(String index) {
+        return this.metaData().hasIndex(index);
+    }
+
+    /**
+     * 创建下一个版本的索引，关闭副本和刷新以加快批量写入，mapping按Goods实体的注解生成，
+     * 修改了Goods的mapping后通过重建索引上线
+     * @return 新索引的名称
+     */
+    public String createNextIndex() {
+        String alias = this.getAlias();
+        int version = 0;
+        for (String index : this.metaData().getConcreteAllIndices()) {
+            if (index.startsWith(alias + "_v")) {
+                version = Math.max(version, Integer.parseInt(index.substring(alias.length() + 2)));
+            }
+        }
+        String index = alias + "_v" + (version + 1);
+
+        this.indices().prepareCreate(index)
+                .setSettings(Settings.builder()
+                        .put("index.number_of_shards", this.entity().getShards())
+                        .put("index.number_of_replicas", 0)
+                        .put("index.refresh_interval", "-1"))
+                .addMapping(this.getType(), this.entityMapping())
+                .get();
+        return index;
+    }
+
+    /**
+     * 开始向index重建，之后的增量修改会同时写入index
+     * @param index
+     * @param changed 断点中保存的被修改过的spuId，续跑同一个索引时保留启动后已经记录的修改
+     */
+    public void beginRebuild(String index, Collection<Long> changed) {
+        if (!index.equals(this.rebuildIndex)) {
+            this.changedIds.clear();
+        }
+        this.changedIds.addAll(changed);
+        this.rebuildIndex = index;
+    }
+
+    public void endRebuild() {
+        this.rebuildIndex = null;
+        this.changedIds.clear();
+    }
+
+    /**
+     * 记录重建期间被修改的spuId，必须在读取item-service的数据之前调用
+     * @param id
+     */
+    public void markChanged(Long id) {
+        if (this.rebuildIndex != null) {
+            this.changedIds.add(id);
+        }
+    }
+
+    /**
+     * 重建期间被修改过、还没有重新同步的spuId，保存到断点中
+     * @return
+     */
+    public List<Long> changedSnapshot() {
+        return new ArrayList<>(this.changedIds);
+    }
+
+    /**
+     * 取出并清空重建期间被修改的spuId
+     * @return
+     */
+    public List<Long> drainChanged() {
+        List<Long> ids = new ArrayList<>(this.changedIds);
+        this.changedIds.removeAll(ids);
+        return ids;
+    }
+
+    /**
+     * 用一次bulk请求写入和删除文档，重建期间同时写入正在重建的索引
+     * @param goodsList 需要写入的文档
+     * @param deleteIds 需要删除的spuId
+     * @throws IOException
+     */
+    public void bulk(List<Goods> goodsList, Collection<Long> deleteIds) throws IOException {
+        if (goodsList.isEmpty() && deleteIds.isEmpty()) {
+            return;
+        }
+        List<String> indices = new ArrayList<>(2);
+        indices.add(this.getAlias());
+        String rebuild = this.rebuildIndex;
+        if (rebuild != null) {
+            indices.add(rebuild);
+        }
+        String type = this.getType();
+        Client client = this.template.getClient();
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (Goods goods : goodsList) {
+            String source = ENTITY_MAPPER.mapToString(goods);
+            for (String index : indices) {
+                bulk.add(client.prepareIndex(index, type, goods.getId().toString()).setSource(source, XContentType.JSON));
+            }
+        }
+        for (Long id : deleteIds) {
+            for (String index : indices) {
+                bulk.add(client.prepareDelete(index, type, id.toString()));
+            }
+        }
+        BulkResponse response = bulk.get();
+        if (response.hasFailures()) {
+            throw new IllegalStateException("bulk sync failed: " + response.buildFailureMessage());
+        }
+    }
+
+    /**
+     * 重建完成：段合并、恢复副本和刷新设置，原子切换别名，并只保留上一个版本用于回滚
+     * @param index
+     */
+    public void publish(String index) {
+        String alias = this.getAlias();
+        this.indices().prepareRefresh(index).get();
+        this.indices().prepareForceMerge(index).setMaxNumSegments(1).get();
+        this.indices().prepareUpdateSettings(index)
+                .setSettings(Settings.builder()
+                        .put("index.number_of_replicas", this.properties.getReplicas())
+                        .put("index.refresh_interval", this.properties.getRefreshInterval()))
+                .get();
+
+        if (this.metaData().hasIndex(alias)) {
+            //旧版本直接使用了goods作为索引名，在同一个请求中删除该索引并建立别名，仅在第一次切换时发生
+            LOGGER.warn("replacing concrete index {} with alias to {}", alias, index);
+            this.indices().prepareAliases().removeIndex(alias).addAlias(index, alias).get();
+            return;
+        }
+
+        List<String> previous = this.aliasedIndices();
+        IndicesAliasesRequestBuilder aliases = this.indices().prepareAliases();
+        previous.forEach(old -> aliases.removeAlias(old, alias));
+        aliases.addAlias(index, alias).get();
+
+        //删除更早的版本，只保留刚被替换下来的索引
+        for (String old : this.metaData().getConcreteAllIndices()) {
+            if (old.startsWith(alias + "_v") && !old.equals(index) && !previous.contains(old)) {
+                this.indices().prepareDelete(old).get();
+            }
+        }
+    }
+
+    private List<String> aliasedIndices() {
+        List<String> result = new ArrayList<>();
+        this.indices().prepareGetAliases(this.getAlias()).get().getAliases()
+                .keysIt().forEachRemaining(result::add);
+        return result;
+    }
+
+    /**
+     * 与putMapping(Goods.class)生成的mapping相同：只声明带@Field注解的字段，其余字段使用动态mapping
+     */
+    private Map<String, Object> entityMapping() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (java.lang.reflect.Field field : Goods.class.getDeclaredFields()) {
+            Field annotation = field.getAnnotation(Field.class);
+            if (annotation == null) {
+                continue;
+            }
+            Map<String, Object> property = new LinkedHashMap<>();
+            property.put("type", annotation.type().name().toLowerCase(Locale.ROOT));
+            if (!annotation.index()) {
+                property.put("index", false);
+            }
+            if (!annotation.analyzer().isEmpty()) {
+                property.put("analyzer", annotation.analyzer());
+            }
+            if (!annotation.searchAnalyzer().isEmpty()) {
+                property.put("search_analyzer", annotation.searchAnalyzer());
+            }
+            properties.put(field.getName(), property);
+        }
+        return Collections.singletonMap("properties", properties);
+    }
+
+    private MetaData metaData() {
+        return this.template.getClient().admin().cluster().prepareState().get().getState().getMetaData();
+    }
+
+    private IndicesAdminClient indices() {
+        return this.template.getClient().admin().indices();
+    }
+
+    private ElasticsearchPersistentEntity entity() {
+        return this.template.getPersistentEntityFor(Goods.class);
+    }
+}
@@ -0,0 +1,86 @@
+package com.leyou.search.service;
+
+import com.leyou.item.pojo.SpecParam;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+import java.util.Arrays;
+import java.util.stream.DoubleStream;
+
+/**
+ * 预先解析好的数值型规格参数区间，例如segments为"0-4.0,4.0-5.0,5.0-"。
+ * 所有区间的端点排序去重后切分成互不重叠的小区间，每个小区间预先算好按原顺序第一个包含它的区间名称，
+ * 区间重叠或者起点相同时结果和逐个匹配一致，查找时对端点二分
+ */
+public class NumericSegments {
+
+    private static final String OTHER = "其它";
+
+    private final double[] points;
+    private final String[] labels;
+
+    public NumericSegments(SpecParam param) {
+        String[] segments = StringUtils.isBlank(param.getSegments()) ? new String[0] : param.getSegments().split(",");
+        Segment[] parsed = new Segment[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            parsed[i] = new Segment(segments[i], param.getUnit());
+        }
+
+        this.points = Arrays.stream(parsed)
+                .flatMapToDouble(segment -> DoubleStream.of(segment.begin, segment.end))
+                .sorted().distinct().toArray();
+        //[points[i], points[i+1])内的值被同样的区间包含，取原顺序中的第一个
+        this.labels = new String[this.points.length];
+        for (int i = 0; i < this.points.length; i++) {
+            this.labels[i] = OTHER;
+            for (Segment segment : parsed) {
+                if (segment.begin <= this.points[i] && this.points[i] < segment.end) {
+                    this.labels[i] = segment.label;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取数值所在区间的名称，多个区间都包含该值时取第一个
+     * @param value
+     * @return 不在任何区间内时返回"其它"
+     */
+    public String choose(String value) {
+        double val = NumberUtils.toDouble(value);
+        //找到最后一个小于等于val的端点
+        int low = 0;
+        int high = this.points.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.points[mid] <= val) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? OTHER : this.labels[found];
+    }
+
+    private static class Segment {
+        private final double begin;
+        private final double end;
+        private final String label;
+
+        Segment(String segment, String unit) {
+            String[] segs = segment.split("-");
+            this.begin = NumberUtils.toDouble(segs[0]);
+            this.end = segs.length == 2 ? NumberUtils.toDouble(segs[1]) : Double.MAX_VALUE;
+            if (segs.length == 1) {
+                this.label = segs[0] + unit + "以上";
+            } else if (this.begin == 0) {
+                this.label = segs[1] + unit + "以下";
+            } else {
+                this.label = segment + unit;
+            }
+        }
+    }
+}
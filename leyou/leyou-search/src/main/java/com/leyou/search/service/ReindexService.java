@@ -0,0 +1,383 @@
+package com.leyou.search.service;
+
+import com.leyou.search.client.GoodsClient;
+import com.leyou.search.config.ReindexProperties;
+import com.leyou.search.pojo.Goods;
+import com.leyou.search.pojo.ReindexProgress;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全量重建goods索引：按spuId游标分页拉取，线程池并行构建文档，bulk批量写入新版本的索引，
+ * 并记录断点以便中断后续跑，完成后切换goods别名。
+ * 断点中同时保存重建期间被修改过的spuId，进程重启后立即恢复双写，续跑时重新同步这些spu
+ */
+@Service
+public class ReindexService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReindexService.class);
+
+    private static final String CHECKPOINT_KEY = "lastSpuId";
+
+    private static final String CHECKPOINT_INDEX = "index";
+
+    private static final String CHECKPOINT_CHANGED = "changedIds";
+
+    /**
+     * 重建结束前重新同步增量修改的最大轮数，超过后由双写保证一致
+     */
+    private static final int MAX_CATCH_UP_ROUNDS = 10;
+
+    @Autowired
+    private GoodsClient goodsClient;
+
+    @Autowired
+    private SearchService searchService;
+
+    @Autowired
+    private ElasticsearchTemplate template;
+
+    @Autowired
+    private GoodsIndexManager indexManager;
+
+    @Autowired
+    private ReindexProperties properties;
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(r -> new Thread(r, "reindex-coordinator"));
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Run current = new Run(null, 0L, "IDLE");
+
+    /**
+     * 在后台线程中开始重建
+     * @param restart true表示忽略断点从头开始
+     * @return 已经有重建在执行时返回false
+     */
+    public boolean start(boolean restart) {
+        if (!this.running.compareAndSet(false, true)) {
+            return false;
+        }
+        Run run = this.newRun(restart);
+        this.coordinator.execute(() -> this.execute(run));
+        return true;
+    }
+
+    /**
+     * 在当前线程中执行重建，直到完成或失败
+     * @param restart true表示忽略断点从头开始
+     * @return 重建结束时的进度
+     */
+    public ReindexProgress rebuild(boolean restart) {
+        if (!this.running.compareAndSet(false, true)) {
+            throw new IllegalStateException("reindex is already running");
+        }
+        Run run = this.newRun(restart);
+        this.execute(run);
+        return run.toProgress();
+    }
+
+    /**
+     * 存在未完成的重建时，在开始消费消息之前恢复双写，重启期间的修改不会漏掉
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            Properties checkpoint = this.loadCheckpoint();
+            String index = checkpoint.getProperty(CHECKPOINT_INDEX);
+            if (index != null && this.indexManager.exists(index)) {
+                LOGGER.info("resuming dual writes to unfinished reindex {}", index);
+                this.indexManager.beginRebuild(index, parseIds(checkpoint.getProperty(CHECKPOINT_CHANGED)));
+                this.current = new Run(index, Long.valueOf(checkpoint.getProperty(CHECKPOINT_KEY, "0")), "IDLE");
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("cannot restore unfinished reindex, changes made before it resumes must be resynced by a restart", e);
+        }
+    }
+
+    public ReindexProgress getProgress() {
+        return this.current.toProgress();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.coordinator.shutdownNow();
+        //没有完成的重建，把内存中记录的修改写入断点
+        Run run = this.current;
+        if (run.index != null && run.index.equals(this.indexManager.getRebuildIndex())) {
+            try {
+                this.checkpoint(run, run.lastSpuId, Collections.emptyList());
+            } catch (IOException e) {
+                LOGGER.warn("cannot save reindex checkpoint on shutdown", e);
+            }
+        }
+    }
+
+    private Run newRun(boolean restart) {
+        try {
+            Properties checkpoint = restart ? new Properties() : this.loadCheckpoint();
+            String index = checkpoint.getProperty(CHECKPOINT_INDEX);
+            Run run;
+            if (index != null && this.indexManager.exists(index)) {
+                run = new Run(index, Long.valueOf(checkpoint.getProperty(CHECKPOINT_KEY, "0")), "RUNNING");
+                run.changedIds = parseIds(checkpoint.getProperty(CHECKPOINT_CHANGED));
+            } else {
+                run = new Run(this.indexManager.createNextIndex(), 0L, "RUNNING");
+            }
+            this.current = run;
+            return run;
+        } catch (RuntimeException e) {
+            this.running.set(false);
+            throw e;
+        }
+    }
+
+    private void execute(Run run) {
+        try {
+            this.reindex(run);
+            this.deleteCheckpoint();
+            run.state = "COMPLETED";
+        } catch (Exception e) {
+            LOGGER.error("reindex failed after spuId {}", run.lastSpuId, e);
+            run.error = e.toString();
+            run.state = "FAILED";
+        } finally {
+            run.endTime = new Date();
+            this.running.set(false);
+        }
+    }
+
+    private void reindex(Run run) throws Exception {
+        GoodsBulkWriter writer = new GoodsBulkWriter(this.template, run.index, this.indexManager.getType(),
+                this.properties.getBulkActions(), this.properties.getBulkBytes(), run::afterBulk);
+
+        //从现在起增量修改同时写入新索引，失败时保持双写，续跑时重新同步期间的修改
+        this.indexManager.beginRebuild(run.index, run.changedIds);
+        this.load(run, writer);
+        this.catchUp(run, writer);
+        this.indexManager.publish(run.index);
+        this.indexManager.endRebuild();
+    }
+
+    private void load(Run run, GoodsBulkWriter writer) throws Exception {
+        int threads = this.properties.getThreads();
+        int maxPendingPages = this.properties.getMaxPendingPages();
+        int pageSize = this.properties.getPageSize();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxPendingPages), new WorkerThreadFactory());
+
+        //已提交构建的页，按spuId顺序写入，保证断点之前的文档全部落盘
+        Deque<PendingPage> pending = new ArrayDeque<>();
+        long lastId = run.lastSpuId;
+        long completedId = run.lastSpuId;
+        boolean exhausted = false;
+        try {
+            while (true) {
+                while (!exhausted && pending.size() < maxPendingPages) {
+                    List<Long> ids = this.goodsClient.querySpuIdsAfter(lastId, pageSize);
+                    if (CollectionUtils.isEmpty(ids)) {
+                        exhausted = true;
+                        break;
+                    }
+                    lastId = ids.get(ids.size() - 1);
+                    pending.add(new PendingPage(lastId, workers.submit(() -> this.searchService.buildGoods(ids))));
+                    exhausted = ids.size() < pageSize;
+                }
+
+                PendingPage page = pending.poll();
+                if (page == null) {
+                    break;
+                }
+                List<Goods> goodsList = page.goods.get();
+                goodsList.sort(Comparator.comparing(Goods::getId));
+                for (Goods goods : goodsList) {
+                    //触发了bulk写入，说明之前的页都已经写入es
+                    if (writer.add(goods)) {
+                        this.checkpoint(run, completedId, Collections.emptyList());
+                    }
+                }
+                completedId = page.lastId;
+            }
+            writer.flush();
+            this.checkpoint(run, completedId, Collections.emptyList());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * 重新同步重建期间被修改过的spu，避免旧数据覆盖双写进来的新数据
+     */
+    private void catchUp(Run run, GoodsBulkWriter writer) throws Exception {
+        int pageSize = this.properties.getPageSize();
+        for (int round = 0; round < MAX_CATCH_UP_ROUNDS; round++) {
+            List<Long> changed = this.indexManager.drainChanged();
+            if (changed.isEmpty()) {
+                return;
+            }
+            //取出的spuId同步完成之前仍然保存在断点中
+            this.checkpoint(run, run.lastSpuId, changed);
+            try {
+                for (int from = 0; from < changed.size(); from += pageSize) {
+                    List<Long> ids = changed.subList(from, Math.min(from + pageSize, changed.size()));
+                    Set<Long> deleted = new HashSet<>(ids);
+                    for (Goods goods : this.searchService.buildGoods(ids)) {
+                        deleted.remove(goods.getId());
+                        writer.add(goods);
+                    }
+                    writer.flush();
+                    //item-service中已经不存在的spu
+                    for (Long id : deleted) {
+                        this.template.delete(run.index, this.indexManager.getType(), id.toString());
+                    }
+                }
+            } catch (Exception e) {
+                //失败时放回去，续跑时重新同步
+                changed.forEach(this.indexManager::markChanged);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param draining 已经从indexManager取出、正在重新同步的spuId
+     */
+    private void checkpoint(Run run, long spuId, Collection<Long> draining) throws IOException {
+        run.lastSpuId = spuId;
+        Set<Long> changed = new TreeSet<>(this.indexManager.changedSnapshot());
+        changed.addAll(draining);
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(CHECKPOINT_INDEX, run.index);
+        checkpoint.setProperty(CHECKPOINT_KEY, String.valueOf(spuId));
+        checkpoint.setProperty(CHECKPOINT_CHANGED, StringUtils.join(changed, ","));
+
+        //先写临时文件再原子替换，避免崩溃时留下损坏的断点
+        Path file = Paths.get(this.properties.getCheckpointFile()).toAbsolutePath();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            checkpoint.store(out, null);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Properties loadCheckpoint() {
+        Path file = Paths.get(this.properties.getCheckpointFile());
+        Properties checkpoint = new Properties();
+        if (!Files.exists(file)) {
+            return checkpoint;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            checkpoint.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read reindex checkpoint " + file, e);
+        }
+        return checkpoint;
+    }
+
+    private static List<Long> parseIds(String ids) {
+        if (StringUtils.isBlank(ids)) {
+            return Collections.emptyList();
+        }
+        List<Long> result = new ArrayList<>();
+        for (String id : StringUtils.split(ids, ',')) {
+            result.add(Long.valueOf(id));
+        }
+        return result;
+    }
+
+    private void deleteCheckpoint() throws IOException {
+        Files.deleteIfExists(Paths.get(this.properties.getCheckpointFile()));
+    }
+
+    private static class PendingPage {
+        private final long lastId;
+        private final Future<List<Goods>> goods;
+
+        PendingPage(long lastId, Future<List<Goods>> goods) {
+            this.lastId = lastId;
+            this.goods = goods;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "reindex-worker-" + this.index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * 一次重建的运行状态，由协调线程更新，接口线程读取
+     */
+    private static class Run {
+        private final String index;
+        private final Date startTime = new Date();
+        private final AtomicLong docs = new AtomicLong();
+        private final AtomicLong bulks = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong bulkMillis = new AtomicLong();
+        private final AtomicLong maxBulkMillis = new AtomicLong();
+        private volatile String state;
+        private volatile long lastSpuId;
+        private volatile Date endTime;
+        private volatile String error;
+        private List<Long> changedIds = Collections.emptyList();
+
+        Run(String index, long lastSpuId, String state) {
+            this.index = index;
+            this.lastSpuId = lastSpuId;
+            this.state = state;
+        }
+
+        void afterBulk(int actions, long bytes, long millis) {
+            this.docs.addAndGet(actions);
+            this.bulks.incrementAndGet();
+            this.bytes.addAndGet(bytes);
+            this.bulkMillis.addAndGet(millis);
+            this.maxBulkMillis.accumulateAndGet(millis, Math::max);
+        }
+
+        ReindexProgress toProgress() {
+            ReindexProgress progress = new ReindexProgress();
+            progress.setState(this.state);
+            progress.setIndex(this.index);
+            progress.setLastSpuId(this.lastSpuId);
+            progress.setDocs(this.docs.get());
+            progress.setBulks(this.bulks.get());
+            progress.setBytes(this.bytes.get());
+            progress.setMaxBulkMillis(this.maxBulkMillis.get());
+            progress.setAvgBulkMillis(this.bulks.get() == 0 ? 0 : (double) this.bulkMillis.get() / this.bulks.get());
+            long end = this.endTime == null ? System.currentTimeMillis() : this.endTime.getTime();
+            long elapsed = Math.max(1, end - this.startTime.getTime());
+            progress.setDocsPerSecond(this.docs.get() * 1000.0 / elapsed);
+            progress.setStartTime(this.startTime);
+            progress.setEndTime(this.endTime);
+            progress.setError(this.error);
+            return progress;
+        }
+    }
+}
@@ -1,25 +1,30 @@
 package com.leyou.search.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.leyou.common.pojo.PageResult;
+import com.leyou.item.bo.SpuIndexbo;
 import com.leyou.item.pojo.*;
-import com.leyou.search.client.BrandClient;
-import com.leyou.search.client.CategoryClient;
 import com.leyou.search.client.GoodsClient;
-import com.leyou.search.client.SpecificationClient;
 import com.leyou.search.pojo.Goods;
 import com.leyou.search.pojo.SearchRequest;
 import com.leyou.search.pojo.SearchResult;
 import com.leyou.search.repository.GoodsRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
-import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
@@ -30,37 +35,89 @@ import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class SearchService {
 
     @Autowired
-    private CategoryClient categoryClient;
+    private GoodsClient goodsClient;
 
     @Autowired
-    private BrandClient brandClient;
+    private SpecParamCache specParamCache;
 
     @Autowired
-    private GoodsClient goodsClient;
+    private GoodsRepository goodsRepository;
 
     @Autowired
-    private SpecificationClient specificationClient;
+    private GoodsIndexManager goodsIndexManager;
 
     @Autowired
-    private GoodsRepository goodsRepository;
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BrandCategoryCache brandCategoryCache;
+
+    /**
+     * 是否在搜索请求中直接完成规格参数聚合，关闭后每次都单独发起第二次聚合请求
+     */
+    @Value("${leyou.search.spec-agg-in-request:true}")
+    private boolean specAggInRequest;
+
+    /**
+     * 搜索词到上次搜索得到的唯一分类
+     */
+    private final Cache<String, Long> predictedCids = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    private static final String SPEC_AGG_NAME = "specs";
+
+    private static final String SEARCH_TIMER_NAME = "leyou.search.latency";
 
     private static final ObjectMapper MAPPER=new ObjectMapper();
 
+    /**
+     * 构建单个spu的索引文档
+     * @param spu
+     * @return
+     * @throws IOException
+     */
     public Goods buildGoods(Spu spu) throws IOException {
+        List<Goods> goodsList = this.buildGoods(Collections.singletonList(spu.getId()));
+        return goodsList.isEmpty() ? null : goodsList.get(0);
+    }
+
+    /**
+     * 批量构建索引文档，一页spu只需要一次远程调用
+     * @param spuIds
+     * @return
+     * @throws IOException
+     */
+    public List<Goods> buildGoods(List<Long> spuIds) throws IOException {
+        if(CollectionUtils.isEmpty(spuIds)){
+            return Collections.emptyList();
+        }
+        List<SpuIndexbo> spus = this.goodsClient.querySpuIndexByIds(spuIds);
+        List<Goods> goodsList = new ArrayList<>(spus.size());
+        for (SpuIndexbo spu : spus) {
+            goodsList.add(this.buildGoods(spu));
+        }
+        return goodsList;
+    }
+
+    private Goods buildGoods(SpuIndexbo spu) throws IOException {
         Goods goods=new Goods();
 
-        //根据分类的id查询分类名称
-        List<String> names = this.categoryClient.queryNamesByIds(Arrays.asList(spu.getCid1(), spu.getCid2(), spu.getCid3()));
-        //根据品牌id查询品牌
-        Brand brand = this.brandClient.queryBrandById(spu.getBrandId());
-        //根据spu的id查询所有的sku
-        List<Sku> skus = this.goodsClient.querySkusBySpuId(spu.getId());
+        //分类名称
+        List<String> names = spu.getCategoryNames();
+        //品牌
+        Brand brand = spu.getBrand();
+        //spu下所有的sku
+        List<Sku> skus = spu.getSkus();
         //初始化一个价格集合收集sku价格
         List<Long> prices=new ArrayList<>();
         //收集sku的必要字段信息
@@ -76,29 +133,32 @@ public class SearchService {
             skuMapList.add(map);
         });
 
-        //根据spu中的cid3查询出所有的搜索规格参数
-        List<SpecParam> params = this.specificationClient.queryParams(null, spu.getCid3(), null, true);
-        //根据spuId查询spuDetail
-        SpuDetail spuDetail = this.goodsClient.querySpuDateilBySpuId(spu.getId());
-        //把通用的规格参数值，进行反序列化
-        Map<String,Object> genericSpecMap=MAPPER.readValue(spuDetail.getGenericSpec(),new TypeReference<Map<String,Object>>(){});
-        //把特殊的规格参数值进行反序列化
-        Map<String,List<Object>> specialSpecMap=MAPPER.readValue(spuDetail.getSpecialSpec(),new TypeReference<Map<String,List<Object>>>(){});
+        //cid3下所有的搜索规格参数，以及预先解析好的数值区间，和spu一起查询到的参数优先于缓存
+        SpecParamCache.CategorySpecs categorySpecs = this.specParamCache.get(spu.getCid3(), spu.getParams());
+        List<SpecParam> params = categorySpecs.getParams();
+        SpuDetail spuDetail = spu.getSpuDetail();
+        //只解析可搜索参数对应的通用规格参数值和特殊规格参数值
+        Map<String,Object> genericSpecMap=SpecJsonExtractor.extract(spuDetail.getGenericSpec(),categorySpecs.getGenericIds());
+        Map<String,Object> specialSpecMap=SpecJsonExtractor.extract(spuDetail.getSpecialSpec(),categorySpecs.getSpecialIds());
 
         Map<String,Object> specs=new HashMap<>();
         params.forEach(param->{
             //判断规格参数的类型，是否是通用的规格参数
             if(param.getGeneric()){
                 //如果是通用类型的参数genericSpecMap获取
-                String value=genericSpecMap.get(param.getId().toString()).toString();
+                Object genericValue=genericSpecMap.get(param.getId().toString());
+                if(genericValue == null){
+                    return;
+                }
+                String value=genericValue.toString();
                 //判断是否是数值类型，如果是应该返回一个区间
                 if(param.getNumeric()){
-                    value=chooseSegment(value,param);
+                    value=categorySpecs.getSegments(param.getId()).choose(value);
                 }
 
                 specs.put(param.getName(),value);
             }else {
-                List<Object> value = specialSpecMap.get(param.getId().toString());
+                Object value = specialSpecMap.get(param.getId().toString());
                 specs.put(param.getName(),value);
             }
         });
@@ -122,37 +182,11 @@ public class SearchService {
         return goods;
     }
 
-    private String chooseSegment(String value, SpecParam p) {
-        double val = NumberUtils.toDouble(value);
-        String result = "其它";
-        // 保存数值段
-        for (String segment : p.getSegments().split(",")) {
-            String[] segs = segment.split("-");
-            // 获取数值范围
-            double begin = NumberUtils.toDouble(segs[0]);
-            double end = Double.MAX_VALUE;
-            if(segs.length == 2){
-                end = NumberUtils.toDouble(segs[1]);
-            }
-            // 判断是否在范围内
-            if(val >= begin && val < end){
-                if(segs.length == 1){
-                    result = segs[0] + p.getUnit() + "以上";
-                }else if(begin == 0){
-                    result = segs[1] + p.getUnit() + "以下";
-                }else{
-                    result = segment + p.getUnit();
-                }
-                break;
-            }
-        }
-        return result;
-    }
-
     public SearchResult search(SearchRequest request) {
         if(StringUtils.isBlank(request.getKey())){
             return null;
         }
+        long start=System.nanoTime();
         //自定义查询构建器
         NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
         //添加查询条件
@@ -170,8 +204,17 @@ public class SearchService {
         queryBuilder.addAggregation(AggregationBuilders.terms(categoryAggName).field("cid3"));
         queryBuilder.addAggregation(AggregationBuilders.terms(brandAggName).field("brandId"));
 
+        //已经确定或者能预测出唯一分类时，把规格参数聚合放在同一次请求中，只对该分类的文档做聚合
+        Long specCid=this.specAggInRequest ? resolveSpecCid(request) : null;
+        if(specCid != null){
+            FilterAggregationBuilder specAgg=AggregationBuilders.filter(SPEC_AGG_NAME,QueryBuilders.termQuery("cid3",specCid));
+            addParamAggs(specCid,specAgg::subAggregation);
+            queryBuilder.addAggregation(specAgg);
+        }
+
         //执行查询返回结果集
         AggregatedPage<Goods> goodsPage = (AggregatedPage<Goods>)this.goodsRepository.search(queryBuilder.build());
+        int roundTrips=1;
 
         //获取聚合结果集并解析
         List<Map<String,Object>> categories=getCategoryAggResult(goodsPage.getAggregation(categoryAggName));
@@ -180,13 +223,40 @@ public class SearchService {
         List<Map<String,Object>> specs=null;
         //判断是否是一个分类，只有一个分类时才能做规格参数聚合
         if(!CollectionUtils.isEmpty(categories) && categories.size() ==1){
-            //对规格参数进行聚合
-            specs=getParamAggResult((Long)categories.get(0).get("id"),basicQuery);
+            Long cid=(Long)categories.get(0).get("id");
+            if(cid.equals(specCid)){
+                //同一次请求中已经聚合过
+                Filter specAgg=goodsPage.getAggregations().get(SPEC_AGG_NAME);
+                specs=parseParamAggs(specAgg.getAggregations());
+            }else {
+                //对规格参数进行聚合
+                specs=getParamAggResult(cid,basicQuery);
+                roundTrips++;
+            }
+            //记住这个搜索词对应的分类，下次同样的搜索只需要一次请求
+            this.predictedCids.put(StringUtils.trim(request.getKey()),cid);
         }
 
+        this.meterRegistry.timer(SEARCH_TIMER_NAME,"roundTrips",String.valueOf(roundTrips))
+                .record(System.nanoTime()-start,TimeUnit.NANOSECONDS);
         return new SearchResult(goodsPage.getTotalElements(),goodsPage.getTotalPages(),goodsPage.getContent(),categories,brands,specs);
     }
 
+    /**
+     * 确定规格参数聚合的分类：用户已经选择了分类时直接使用，否则使用同一搜索词上次得到的唯一分类
+     * @param request
+     * @return 无法确定时返回null，由查询结果的分类聚合决定
+     */
+    private Long resolveSpecCid(SearchRequest request) {
+        Map<String,Object> filter=request.getFilter();
+        if(filter != null && filter.get("分类") != null){
+            //过滤条件来自用户输入，不是合法的分类id时按没有确定分类处理
+            long cid=NumberUtils.toLong(filter.get("分类").toString(),0);
+            return cid > 0 ? cid : null;
+        }
+        return this.predictedCids.getIfPresent(StringUtils.trim(request.getKey()));
+    }
+
     /**
      * 构建布尔查询
      * @param request
@@ -201,10 +271,13 @@ public class SearchService {
         Map<String,Object> filter=request.getFilter();
         for (Map.Entry<String, Object> entry : filter.entrySet()) {
             String key=entry.getKey();
-            if(StringUtils.equals("品牌",key)){
-                key="brandId";
-            }else if(StringUtils.equals("分类",key)){
-                key="cid3";
+            if(StringUtils.equals("品牌",key)||StringUtils.equals("分类",key)){
+                key=StringUtils.equals("品牌",key) ? "brandId" : "cid3";
+                //数值字段上不是数字的过滤条件会让es查询失败，直接不匹配任何商品
+                if(entry.getValue() == null || !NumberUtils.isDigits(entry.getValue().toString())){
+                    boolQueryBuilder.filter(QueryBuilders.boolQuery().mustNot(QueryBuilders.matchAllQuery()));
+                    continue;
+                }
             }else {
                 key="specs."+key+".keyword";
             }
@@ -227,13 +300,8 @@ public class SearchService {
         //添加基本查询条件
         queryBuilder.withQuery(basicQuery);
 
-        //查询要聚合的规格参数
-        List<SpecParam> params = this.specificationClient.queryParams(null, cid, null, true);
-
         //添加规格参数的聚合
-        params.forEach(param->{
-            queryBuilder.addAggregation(AggregationBuilders.terms(param.getName()).field("specs."+param.getName()+".keyword"));
-        });
+        addParamAggs(cid,queryBuilder::addAggregation);
 
         //添加结果集过滤
         queryBuilder.withSourceFilter(new FetchSourceFilter(new String[]{},null));
@@ -241,9 +309,31 @@ public class SearchService {
         //执行聚合查询
         AggregatedPage<Goods> goodsPage = (AggregatedPage<Goods>)this.goodsRepository.search(queryBuilder.build());
 
+        return parseParamAggs(goodsPage.getAggregations());
+    }
+
+    /**
+     * 添加分类下所有可搜索规格参数的聚合
+     * @param cid
+     * @param consumer
+     */
+    private void addParamAggs(Long cid, Consumer<TermsAggregationBuilder> consumer) {
+        //查询要聚合的规格参数
+        List<SpecParam> params = this.specParamCache.get(cid).getParams();
+        params.forEach(param->{
+            consumer.accept(AggregationBuilders.terms(param.getName()).field("specs."+param.getName()+".keyword"));
+        });
+    }
+
+    /**
+     * 解析规格参数的聚合结果集
+     * @param aggregations
+     * @return
+     */
+    private List<Map<String, Object>> parseParamAggs(Aggregations aggregations) {
         List<Map<String,Object>> specs=new ArrayList<>();
         //解析聚合结果集
-        Map<String, Aggregation> aggregationMap = goodsPage.getAggregations().asMap();
+        Map<String, Aggregation> aggregationMap = aggregations.asMap();
         for (Map.Entry<String, Aggregation> entry : aggregationMap.entrySet()) {
             //初始化一个map
             Map<String,Object> map=new HashMap<>();
@@ -251,7 +341,7 @@ public class SearchService {
             //初始化一个options集合，收集桶中的key
             List<String> options=new ArrayList<>();
             //获取聚合
-            StringTerms terms=(StringTerms)entry.getValue();
+            Terms terms=(Terms)entry.getValue();
             //获取桶集合
             terms.getBuckets().forEach(bucket -> {
                 options.add(bucket.getKeyAsString());
@@ -269,10 +359,10 @@ public class SearchService {
      */
     private List<Brand> getBrandAggResult(Aggregation aggregation) {
         LongTerms terms= (LongTerms) aggregation;
-        //获取聚合中的桶
-        return terms.getBuckets().stream().map(term->{
-            return this.brandClient.queryBrandById(term.getKeyAsNumber().longValue());
-        }).collect(Collectors.toList());
+        //获取聚合中的桶，从缓存中批量获取品牌
+        List<Long> ids=terms.getBuckets().stream().map(term->term.getKeyAsNumber().longValue()).collect(Collectors.toList());
+        Map<Long,Brand> brands=this.brandCategoryCache.getBrands(ids);
+        return ids.stream().map(brands::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
     /**
@@ -282,36 +372,37 @@ public class SearchService {
      */
     private List<Map<String, Object>> getCategoryAggResult(Aggregation aggregation) {
         LongTerms terms= (LongTerms) aggregation;
+        List<Long> ids=terms.getBuckets().stream().map(item->item.getKeyAsNumber().longValue()).collect(Collectors.toList());
+        Map<Long,String> names=this.brandCategoryCache.getCategoryNames(ids);
 
         //获取桶的集合转化成List<Map<String,Object>>
-        return terms.getBuckets().stream().map(item->{
+        return ids.stream().filter(names::containsKey).map(id->{
             Map<String ,Object> map=new HashMap<>();
-            Long id=item.getKeyAsNumber().longValue();
-            List<String> names=this.categoryClient.queryNamesByIds(Arrays.asList(id));
             map.put("id",id);
-            map.put("name",names.get(0));
+            map.put("name",names.get(id));
             return map;
         }).collect(Collectors.toList());
     }
 
+    /**
+     * 批量同步增量修改，写入和删除合并成一次bulk请求
+     * @param saveIds 新增或修改的spuId
+     * @param deleteIds 删除的spuId
+     * @throws IOException
+     */
+    public void sync(Collection<Long> saveIds, Collection<Long> deleteIds) throws IOException {
+        //先登记再查询数据，保证重建结束前能重新同步到最新数据
+        saveIds.forEach(this.goodsIndexManager::markChanged);
+        deleteIds.forEach(this.goodsIndexManager::markChanged);
+        List<Goods> goodsList = this.buildGoods(new ArrayList<>(saveIds));
+        this.goodsIndexManager.bulk(goodsList, deleteIds);
+    }
+
     public void save(Long id) throws IOException {
-        Spu spu = this.goodsClient.querySpuById(id);
-        Goods goods = this.buildGoods(spu);
-        this.goodsRepository.save(goods);
+        this.sync(Collections.singletonList(id), Collections.emptyList());
     }
 
-    public void delete(Long id) {
-        this.goodsRepository.deleteById(id);
+    public void delete(Long id) throws IOException {
+        this.sync(Collections.emptyList(), Collections.singletonList(id));
     }
 }
-
-
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,57 @@
+package com.leyou.search.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 流式解析spuDetail中的规格参数json，只读取需要的参数id对应的值，其余部分直接跳过
+ */
+public final class SpecJsonExtractor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SpecJsonExtractor() {
+    }
+
+    /**
+     * 从形如{"1":"其它","4":["白色","金色"]}的json中取出keys对应的值，
+     * 值的类型和反序列化成Map&lt;String,Object&gt;时相同
+     * @param json
+     * @param keys 需要的参数id
+     * @return 只包含json中存在的key
+     * @throws IOException
+     */
+    public static Map<String, Object> extract(String json, Set<String> keys) throws IOException {
+        if (StringUtils.isBlank(json) || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> result = new HashMap<>(keys.size() * 2);
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("spec json is not an object: " + StringUtils.abbreviate(json, 50));
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                parser.nextToken();
+                if (keys.contains(key)) {
+                    result.put(key, parser.readValueAs(Object.class));
+                    //需要的值都已经取到，后面的内容不再解析
+                    if (result.size() == keys.size()) {
+                        break;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+package com.leyou.search.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.leyou.item.pojo.SpecParam;
+import com.leyou.search.client.SpecificationClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按cid3缓存可搜索的规格参数，以及数值型参数预先解析好的区间
+ */
+@Component
+public class SpecParamCache {
+
+    @Autowired
+    private SpecificationClient specificationClient;
+
+    @Value("${leyou.search.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${leyou.search.cache.refresh-minutes:10}")
+    private long refreshMinutes;
+
+    @Value("${leyou.search.cache.expire-minutes:60}")
+    private long expireMinutes;
+
+    private LoadingCache<Long, CategorySpecs> cache;
+
+    @PostConstruct
+    public void init() {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(this.maximumSize)
+                .refreshAfterWrite(this.refreshMinutes, TimeUnit.MINUTES)
+                .expireAfterWrite(this.expireMinutes, TimeUnit.MINUTES)
+                .build(cid -> new CategorySpecs(this.specificationClient.queryParams(null, cid, null, true)));
+    }
+
+    /**
+     * 获取分类下可搜索的规格参数，未命中时远程查询
+     * @param cid
+     * @return
+     */
+    public CategorySpecs get(Long cid) {
+        return this.cache.get(cid);
+    }
+
+    /**
+     * 获取分类下可搜索的规格参数，以和spu一起查询到的params为准：和缓存相同时复用缓存中解析好的区间，
+     * 不同时重新解析并更新缓存；params为null时才使用缓存
+     * @param cid
+     * @param params
+     * @return
+     */
+    public CategorySpecs get(Long cid, List<SpecParam> params) {
+        if (params == null) {
+            return this.get(cid);
+        }
+        CategorySpecs cached = this.cache.getIfPresent(cid);
+        if (cached != null && cached.sameParams(params)) {
+            return cached;
+        }
+        CategorySpecs fresh = new CategorySpecs(params);
+        this.cache.put(cid, fresh);
+        return fresh;
+    }
+
+    public void invalidate(Long cid) {
+        this.cache.invalidate(cid);
+    }
+
+    /**
+     * 一个分类下的规格参数元数据
+     */
+    public static class CategorySpecs {
+        private final List<SpecParam> params;
+        private final Map<Long, NumericSegments> segments = new HashMap<>();
+        private final Set<String> genericIds = new HashSet<>();
+        private final Set<String> specialIds = new HashSet<>();
+
+        CategorySpecs(List<SpecParam> params) {
+            this.params = params == null ? Collections.emptyList() : Collections.unmodifiableList(params);
+            this.params.forEach(param -> {
+                if (Boolean.TRUE.equals(param.getGeneric())) {
+                    this.genericIds.add(param.getId().toString());
+                } else {
+                    this.specialIds.add(param.getId().toString());
+                }
+                if (Boolean.TRUE.equals(param.getNumeric())) {
+                    this.segments.put(param.getId(), new NumericSegments(param));
+                }
+            });
+        }
+
+        public List<SpecParam> getParams() {
+            return params;
+        }
+
+        /**
+         * 是否和params中影响索引结果的字段都相同
+         * @param other
+         * @return
+         */
+        boolean sameParams(List<SpecParam> other) {
+            if (other.size() != this.params.size()) {
+                return false;
+            }
+            for (int i = 0; i < other.size(); i++) {
+                SpecParam a = this.params.get(i);
+                SpecParam b = other.get(i);
+                if (!Objects.equals(a.getId(), b.getId()) || !Objects.equals(a.getName(), b.getName())
+                        || !Objects.equals(a.getGeneric(), b.getGeneric()) || !Objects.equals(a.getNumeric(), b.getNumeric())
+                        || !Objects.equals(a.getUnit(), b.getUnit()) || !Objects.equals(a.getSegments(), b.getSegments())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 数值型参数的区间，非数值型参数返回null
+         * @param paramId
+         * @return
+         */
+        public NumericSegments getSegments(Long paramId) {
+            return segments.get(paramId);
+        }
+
+        /**
+         * 需要从genericSpec中读取的参数id
+         * @return
+         */
+        public Set<String> getGenericIds() {
+            return genericIds;
+        }
+
+        /**
+         * 需要从specialSpec中读取的参数id
+         * @return
+         */
+        public Set<String> getSpecialIds() {
+            return specialIds;
+        }
+    }
+}
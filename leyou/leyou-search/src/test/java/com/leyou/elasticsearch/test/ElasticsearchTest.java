@@ -1,11 +1,8 @@
 package com.leyou.elasticsearch.test;
 
-import com.leyou.common.pojo.PageResult;
-import com.leyou.item.bo.Spubo;
-import com.leyou.search.client.GoodsClient;
 import com.leyou.search.pojo.Goods;
-import com.leyou.search.repository.GoodsRepository;
-import com.leyou.search.service.SearchService;
+import com.leyou.search.pojo.ReindexProgress;
+import com.leyou.search.service.ReindexService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,9 +10,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.io.IOException;
-import java.util.List;
-import java.util.stream.Collectors;
+import static org.junit.Assert.*;
 
 @SpringBootTest
 @RunWith(SpringRunner.class)
@@ -24,51 +19,18 @@ public class ElasticsearchTest {
     private ElasticsearchTemplate template;
 
     @Autowired
-    private GoodsRepository goodsRepository;
-
-    @Autowired
-    private SearchService searchService;
-
-    @Autowired
-    private GoodsClient goodsClient;
+    private ReindexService reindexService;
 
     @Test
     public void test(){
         this.template.createIndex(Goods.class);
         this.template.putMapping(Goods.class);
 
-        Integer page=0,rows=100;
-        do{
-            //分页查询spu，获取分页结果集
-            PageResult<Spubo> result = this.goodsClient.querySpuByPage(null, null, page, rows);
-            //获取当前页数据
-            List<Spubo> items = result.getItems();
-            //处理List<spuBo> ==>List<Goods>
-            List<Goods> goodsList = items.stream().map(spuBo -> {
-                try {
-                    return this.searchService.buildGoods(spuBo);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                return null;
-            }).collect(Collectors.toList());
-            //执行新增数据的方法
-            this.goodsRepository.saveAll(goodsList);
-            rows=items.size();
-            page++;
-        }while (rows == 100);
+        //从头全量重建索引
+        ReindexProgress progress = this.reindexService.rebuild(true);
+        assertEquals(progress.getError(), "COMPLETED", progress.getState());
+        assertNull(progress.getError());
+        assertTrue("docs=" + progress.getDocs(), progress.getDocs() > 0);
+        assertNotNull(progress.getEndTime());
     }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,97 @@
+package com.leyou.search.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leyou.search.service.SpecJsonExtractor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比构建索引文档时两种解析规格参数json的方式：整体反序列化成Map，以及只流式读取可搜索参数。
+ * 直接运行main方法，gc.alloc.rate.norm一列是每次解析分配的字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpecJsonBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * 规格参数总数，其中只有少数是可搜索的
+     */
+    @Param({"20", "200"})
+    private int paramCount;
+
+    private String genericSpec;
+
+    private String specialSpec;
+
+    private Set<String> genericIds;
+
+    private Set<String> specialIds;
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, Object> generic = new LinkedHashMap<>();
+        Map<String, List<Object>> special = new LinkedHashMap<>();
+        for (int i = 1; i <= this.paramCount; i++) {
+            if (i % 4 == 0) {
+                special.put(String.valueOf(i), Arrays.asList("白色", "金色", "玫瑰金", "规格值" + i));
+            } else if (i % 3 == 0) {
+                generic.put(String.valueOf(i), i * 1.5);
+            } else {
+                generic.put(String.valueOf(i), "规格参数值" + i + "，较长的描述文字用来模拟真实的规格参数");
+            }
+        }
+        this.genericSpec = MAPPER.writeValueAsString(generic);
+        this.specialSpec = MAPPER.writeValueAsString(special);
+        //和真实数据一样，可搜索参数分散在json的各个位置
+        this.genericIds = new HashSet<>(Arrays.asList("1", "3", String.valueOf(this.paramCount / 2 + 1), String.valueOf(this.paramCount - 1)));
+        this.specialIds = new HashSet<>(Arrays.asList("4", String.valueOf(this.paramCount)));
+    }
+
+    @Benchmark
+    public void readValue(Blackhole blackhole) throws IOException {
+        Map<String, Object> genericSpecMap = MAPPER.readValue(this.genericSpec, new TypeReference<Map<String, Object>>() {});
+        Map<String, List<Object>> specialSpecMap = MAPPER.readValue(this.specialSpec, new TypeReference<Map<String, List<Object>>>() {});
+        for (String id : this.genericIds) {
+            blackhole.consume(genericSpecMap.get(id));
+        }
+        for (String id : this.specialIds) {
+            blackhole.consume(specialSpecMap.get(id));
+        }
+    }
+
+    @Benchmark
+    public void streamExtract(Blackhole blackhole) throws IOException {
+        Map<String, Object> genericSpecMap = SpecJsonExtractor.extract(this.genericSpec, this.genericIds);
+        Map<String, Object> specialSpecMap = SpecJsonExtractor.extract(this.specialSpec, this.specialIds);
+        for (String id : this.genericIds) {
+            blackhole.consume(genericSpecMap.get(id));
+        }
+        for (String id : this.specialIds) {
+            blackhole.consume(specialSpecMap.get(id));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SpecJsonBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,119 @@
+package com.leyou.search.test;
+
+import com.leyou.search.listener.GoodsListener;
+import com.leyou.search.service.SearchService;
+import com.rabbitmq.client.Channel;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * 批次中混有处理失败的spuId时，只有它的消息被退回或转入死信队列，其他消息正常确认
+ */
+public class GoodsListenerTest {
+
+    private static final long POISON = 13L;
+
+    /**
+     * 同步包含POISON的请求都失败，记录成功同步的spuId
+     */
+    private static class FailingSearchService extends SearchService {
+        private final Set<Long> saved = new HashSet<>();
+        private final Set<Long> deleted = new HashSet<>();
+
+        @Override
+        public void sync(Collection<Long> saveIds, Collection<Long> deleteIds) throws IOException {
+            if (saveIds.contains(POISON) || deleteIds.contains(POISON)) {
+                throw new IOException("cannot index " + POISON);
+            }
+            this.saved.addAll(saveIds);
+            this.deleted.addAll(deleteIds);
+        }
+    }
+
+    @Test
+    public void failingSpuIsRequeuedAndOthersAcked() {
+        FailingSearchService searchService = new FailingSearchService();
+        Map<Long, String> settled = new HashMap<>();
+        GoodsListener listener = newListener(searchService);
+        Channel channel = recordingChannel(settled);
+
+        for (long id = 1; id <= 20; id++) {
+            if (id % 5 == 0) {
+                listener.delete(id, channel, id, false);
+            } else {
+                listener.save(id, channel, id, false);
+            }
+        }
+        ReflectionTestUtils.invokeMethod(listener, "flush");
+
+        assertEquals(20, settled.size());
+        for (long tag = 1; tag <= 20; tag++) {
+            assertEquals("tag " + tag, tag == POISON ? "nack requeue" : "ack", settled.get(tag));
+        }
+        assertFalse(searchService.saved.contains(POISON));
+        assertEquals(15, searchService.saved.size());
+        assertEquals(new HashSet<>(Arrays.asList(5L, 10L, 15L, 20L)), searchService.deleted);
+    }
+
+    @Test
+    public void redeliveredFailingSpuIsDeadLettered() {
+        FailingSearchService searchService = new FailingSearchService();
+        Map<Long, String> settled = new HashMap<>();
+        GoodsListener listener = newListener(searchService);
+        Channel channel = recordingChannel(settled);
+
+        listener.save(1L, channel, 1L, true);
+        listener.save(POISON, channel, 2L, true);
+        //同一个spuId的新消息合并到同一次同步，第一次失败仍然退回队列
+        listener.save(POISON, channel, 3L, false);
+        listener.save(2L, channel, 4L, false);
+        listener.save(null, channel, 5L, false);
+        ReflectionTestUtils.invokeMethod(listener, "flush");
+
+        assertEquals("ack", settled.get(1L));
+        assertEquals("nack dead-letter", settled.get(2L));
+        assertEquals("nack requeue", settled.get(3L));
+        assertEquals("ack", settled.get(4L));
+        assertEquals("ack", settled.get(5L));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), searchService.saved);
+    }
+
+    private static GoodsListener newListener(SearchService searchService) {
+        GoodsListener listener = new GoodsListener();
+        ReflectionTestUtils.setField(listener, "searchService", searchService);
+        ReflectionTestUtils.setField(listener, "batchSize", 100);
+        return listener;
+    }
+
+    /**
+     * 记录每个deliveryTag的确认结果，批量确认视为错误
+     */
+    private static Channel recordingChannel(Map<Long, String> settled) {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "basicAck":
+                    assertFalse("multiple ack", (Boolean) args[1]);
+                    assertNull(settled.put((Long) args[0], "ack"));
+                    return null;
+                case "basicNack":
+                    assertFalse("multiple nack", (Boolean) args[1]);
+                    assertNull(settled.put((Long) args[0], (Boolean) args[2] ? "nack requeue" : "nack dead-letter"));
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "recording channel";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package com.leyou.search.test;
+
+import com.leyou.item.pojo.SpecParam;
+import com.leyou.search.service.NumericSegments;
+import org.apache.commons.lang.math.NumberUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NumericSegmentsTest {
+
+    @Test
+    public void chooseSegment() {
+        NumericSegments segments = new NumericSegments(param("0-4.0,4.0-5.0,5.0-"));
+        assertEquals("4.0英寸以下", segments.choose("3.5"));
+        assertEquals("4.0-5.0英寸", segments.choose("4.0"));
+        assertEquals("5.0英寸以上", segments.choose("6.1"));
+        assertEquals("其它", segments.choose("-1"));
+    }
+
+    /**
+     * 区间重叠或者起点相同时，和逐个匹配一样取第一个包含该值的区间
+     */
+    @Test
+    public void overlappingSegmentsMatchFirst() {
+        String[] definitions = {"2-6,0-4,4-8,8-", "0-4,0-8,4-", "3-,0-5,5-10", "1-3,1-2,2-5"};
+        String[] values = {"-1", "0", "1", "1.5", "2", "2.5", "3", "4", "4.5", "5", "6", "7.9", "8", "10", "100", "abc"};
+        for (String definition : definitions) {
+            SpecParam param = param(definition);
+            NumericSegments segments = new NumericSegments(param);
+            for (String value : values) {
+                assertEquals(definition + " " + value, firstMatch(value, param), segments.choose(value));
+            }
+        }
+    }
+
+    private static SpecParam param(String segments) {
+        SpecParam param = new SpecParam();
+        param.setSegments(segments);
+        param.setUnit("英寸");
+        return param;
+    }
+
+    /**
+     * 原来逐个匹配区间的实现
+     */
+    private static String firstMatch(String value, SpecParam p) {
+        double val = NumberUtils.toDouble(value);
+        for (String segment : p.getSegments().split(",")) {
+            String[] segs = segment.split("-");
+            double begin = NumberUtils.toDouble(segs[0]);
+            double end = segs.length == 2 ? NumberUtils.toDouble(segs[1]) : Double.MAX_VALUE;
+            if (val >= begin && val < end) {
+                if (segs.length == 1) {
+                    return segs[0] + p.getUnit() + "以上";
+                } else if (begin == 0) {
+                    return segs[1] + p.getUnit() + "以下";
+                }
+                return segment + p.getUnit();
+            }
+        }
+        return "其它";
+    }
+}